@@ -16,6 +16,7 @@
 
 package com.example.appengine.bigquerylogging;
 
+import com.example.appengine.bigquerylogging.TimeSeriesSummary.NumericTimeSeriesSummary;
 import com.google.cloud.bigquery.FieldValueList;
 import com.google.cloud.bigquery.TableResult;
 import java.io.IOException;
@@ -32,7 +33,7 @@ public class BigQueryHome {
   }
 
   public static String getMostRecentRun() throws IOException {
-    return convertRunToHtmlTable(BigQueryRunner.getMostRecentRunResult());
+    return convertRunToHtmlTable(getQueryRunner().getMostRecentRunResult());
   }
 
   public static String getMetricAverages() throws IOException {
@@ -61,10 +62,23 @@ public class BigQueryHome {
     for (TimeSeriesSummary metric : values) {
       sb.append("<tr>");
       addColumn(sb, metric.getName());
-      addColumn(sb, metric.getValues().size());
+      addColumn(sb, metric.getCount());
       addColumn(sb, metric.getMostRecentRunTime());
       addColumn(sb, metric.getMostRecentValue());
       addColumn(sb, metric.getAverage());
+      if (metric instanceof NumericTimeSeriesSummary) {
+        NumericTimeSeriesSummary<?> numeric = (NumericTimeSeriesSummary<?>) metric;
+        addColumn(sb, String.format("%s / %s", numeric.getMin(), numeric.getMax()));
+        addColumn(sb, String.format("%.2f", numeric.getStandardDeviation()));
+        addColumn(
+            sb,
+            String.format(
+                "%s / %s / %s",
+                numeric.getPercentile(50), numeric.getPercentile(95), numeric.getPercentile(99)));
+        addColumn(sb, String.format("%.4f", numeric.getRatePerSecond()));
+      } else {
+        sb.append("<td></td><td></td><td></td><td></td>");
+      }
       sb.append("</tr>");
     }
     return sb.toString();
@@ -20,7 +20,9 @@ import com.google.api.Metric;
 import com.google.api.MetricDescriptor;
 import com.google.cloud.ServiceOptions;
 import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.BigQuery.QueryResultsOption;
 import com.google.cloud.bigquery.BigQueryOptions;
+import com.google.cloud.bigquery.FieldValueList;
 import com.google.cloud.bigquery.Job;
 import com.google.cloud.bigquery.JobId;
 import com.google.cloud.bigquery.JobInfo;
@@ -29,11 +31,13 @@ import com.google.cloud.bigquery.TableResult;
 import com.google.cloud.monitoring.v3.MetricServiceClient;
 import com.google.cloud.monitoring.v3.MetricServiceClient.ListMetricDescriptorsPagedResponse;
 import com.google.cloud.monitoring.v3.MetricServiceClient.ListTimeSeriesPagedResponse;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 import com.google.monitoring.v3.CreateMetricDescriptorRequest;
-import com.google.monitoring.v3.CreateTimeSeriesRequest;
 import com.google.monitoring.v3.ListMetricDescriptorsRequest;
 import com.google.monitoring.v3.ListTimeSeriesRequest;
 import com.google.monitoring.v3.Point;
@@ -43,10 +47,13 @@ import com.google.monitoring.v3.TypedValue;
 import com.google.protobuf.util.Timestamps;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class BigQueryRunner {
@@ -75,12 +82,30 @@ public class BigQueryRunner {
   private static final Set<MetricDescriptor> REQUIRED_METRICS =
       ImmutableSet.of(QUERY_DURATION_METRIC, ROWS_RETURNED_METRIC);
 
-  private static TableResult mostRecentRunResult;
+  private static final String DEFAULT_QUERY =
+      "SELECT "
+          + "CONCAT('https://stackoverflow.com/questions/', CAST(id as STRING)) as url, "
+          + "view_count "
+          + "FROM `bigquery-public-data.stackoverflow.posts_questions` "
+          + "WHERE tags like '%google-bigquery%' "
+          + "ORDER BY favorite_count DESC LIMIT 10";
+
+  // Bounds for the cache of recent query results.
+  private static final int MAX_CACHED_RESULTS = 100;
+  private static final long RESULT_CACHE_TTL_MINUTES = 5;
+
   private static Set<String> existingMetrics = Sets.newHashSet();
 
   private final MetricServiceClient client;
   private final BigQuery bigquery;
   private final String projectName;
+  private final Cache<String, TableResult> resultCache =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_RESULTS)
+          .expireAfterWrite(RESULT_CACHE_TTL_MINUTES, TimeUnit.MINUTES)
+          .build();
+  private final TimeSeriesBuffer metricBuffer;
+  private volatile String mostRecentQueryHash;
   private PrintStream os;
 
   // Retrieve a singleton instance
@@ -103,34 +128,102 @@ public class BigQueryRunner {
     this.os = os;
     this.projectName = String.format("projects/%s", ServiceOptions.getDefaultProjectId());
     this.bigquery = bigquery;
+    this.metricBuffer = new TimeSeriesBuffer(metricsClient, projectName);
   }
 
-  public static TableResult getMostRecentRunResult() {
-    return mostRecentRunResult;
+  public TableResult getMostRecentRunResult() {
+    String queryHash = mostRecentQueryHash;
+    return queryHash == null ? null : resultCache.getIfPresent(queryHash);
   }
 
   public void runQuery() throws InterruptedException {
+    // Always run the query here, rather than serving a cached result.
+    executeQuery(DEFAULT_QUERY);
+    if (flushMetrics()) {
+      os.println("Done writing metrics.");
+    } else {
+      os.println("Metrics were written recently; these will be written by a later request.");
+    }
+  }
+
+  /**
+   * Run a query and wait for its results. Results of recent queries are served from a bounded
+   * cache keyed by the hash of the query text.
+   */
+  public TableResult runQuery(String query) throws InterruptedException {
+    String queryHash = hashQuery(query);
+    TableResult result = resultCache.getIfPresent(queryHash);
+    if (result == null) {
+      return executeQuery(query);
+    }
+    mostRecentQueryHash = queryHash;
+    return result;
+  }
+
+  // Runs a query, waits for its results and caches them.
+  private TableResult executeQuery(String query) throws InterruptedException {
+    String queryHash = hashQuery(query);
+    long queryStartTime = System.currentTimeMillis();
+    Job queryJob = waitForJob(startQuery(query));
+    TableResult result = queryJob.getQueryResults();
+    long queryEndTime = System.currentTimeMillis();
+
+    recordQueryMetrics(queryEndTime - queryStartTime, result.getTotalRows());
+    resultCache.put(queryHash, result);
+    mostRecentQueryHash = queryHash;
+    return result;
+  }
+
+  /**
+   * Submit a query without waiting for it to complete. Callers can start several queries and then
+   * read each one with {@link #streamResults}.
+   */
+  public Job startQuery(String query) {
     QueryJobConfiguration queryConfig =
-        QueryJobConfiguration.newBuilder(
-                "SELECT "
-                    + "CONCAT('https://stackoverflow.com/questions/', CAST(id as STRING)) as url, "
-                    + "view_count "
-                    + "FROM `bigquery-public-data.stackoverflow.posts_questions` "
-                    + "WHERE tags like '%google-bigquery%' "
-                    + "ORDER BY favorite_count DESC LIMIT 10")
+        QueryJobConfiguration.newBuilder(query)
             // Use standard SQL syntax for queries.
             // See: https://cloud.google.com/bigquery/sql-reference/
             .setUseLegacySql(false)
             .build();
 
-    List<TimeSeries> timeSeriesList = new ArrayList<>();
+    // Create a job ID so that we can safely retry.
+    JobId jobId = JobId.of(UUID.randomUUID().toString());
+    return bigquery.create(JobInfo.newBuilder(queryConfig).setJobId(jobId).build());
+  }
 
+  /**
+   * Wait for a query started with {@link #startQuery} and pass its rows to the consumer one page
+   * at a time, so only a single page is held in memory.
+   *
+   * @return the total number of rows in the result
+   */
+  public long streamResults(Job queryJob, long pageSize, Consumer<FieldValueList> rowConsumer)
+      throws InterruptedException {
     long queryStartTime = System.currentTimeMillis();
+    Job completedJob = waitForJob(queryJob);
+    TableResult page = completedJob.getQueryResults(QueryResultsOption.pageSize(pageSize));
+    long totalRows = page.getTotalRows();
+    recordQueryMetrics(System.currentTimeMillis() - queryStartTime, totalRows);
+
+    while (page != null) {
+      for (FieldValueList row : page.getValues()) {
+        rowConsumer.accept(row);
+      }
+      page = page.hasNextPage() ? page.getNextPage() : null;
+    }
+    return totalRows;
+  }
 
-    // Create a job ID so that we can safely retry.
-    JobId jobId = JobId.of(UUID.randomUUID().toString());
-    Job queryJob = bigquery.create(JobInfo.newBuilder(queryConfig).setJobId(jobId).build());
+  /**
+   * Write the buffered metric points, unless metrics were written in the last few seconds.
+   *
+   * @return false if the points were kept for a later flush
+   */
+  public boolean flushMetrics() {
+    return metricBuffer.flush();
+  }
 
+  private Job waitForJob(Job queryJob) throws InterruptedException {
     // Wait for the query to complete.
     queryJob = queryJob.waitFor();
 
@@ -142,29 +235,19 @@ public class BigQueryRunner {
       // errors, not just the latest one.
       throw new RuntimeException(queryJob.getStatus().getError().toString());
     }
+    return queryJob;
+  }
 
-    // Log the result metrics.
-    TableResult result = queryJob.getQueryResults();
-
-    long queryEndTime = System.currentTimeMillis();
+  private void recordQueryMetrics(long durationMillis, long rowsReturned) {
+    createMetricsIfNeeded();
     // Add query duration metric.
-    timeSeriesList.add(prepareMetric(QUERY_DURATION_METRIC, queryEndTime - queryStartTime));
-
+    metricBuffer.add(prepareMetric(QUERY_DURATION_METRIC, durationMillis));
     // Add rows returned metric.
-    timeSeriesList.add(prepareMetric(ROWS_RETURNED_METRIC, result.getTotalRows()));
-
-    // Prepares the time series request
-    CreateTimeSeriesRequest request =
-        CreateTimeSeriesRequest.newBuilder()
-            .setName(projectName)
-            .addAllTimeSeries(timeSeriesList)
-            .build();
-
-    createMetricsIfNeeded();
-    client.createTimeSeries(request);
-    os.println("Done writing metrics.");
+    metricBuffer.add(prepareMetric(ROWS_RETURNED_METRIC, rowsReturned));
+  }
 
-    mostRecentRunResult = result;
+  private static String hashQuery(String query) {
+    return Hashing.sha256().hashString(query, StandardCharsets.UTF_8).toString();
   }
 
   // Returns a metric time series with a single int64 data point.
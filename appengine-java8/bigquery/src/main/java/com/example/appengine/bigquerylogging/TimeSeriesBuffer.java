@@ -0,0 +1,127 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.appengine.bigquerylogging;
+
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import com.google.common.collect.Lists;
+import com.google.monitoring.v3.CreateTimeSeriesRequest;
+import com.google.monitoring.v3.Point;
+import com.google.monitoring.v3.TimeInterval;
+import com.google.monitoring.v3.TimeSeries;
+import com.google.monitoring.v3.TypedValue;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Timestamps;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates single-point int64 time series until they are written by {@link #flush}.
+ *
+ * <p>Cloud Monitoring rejects points written to the same series (metric and resource) more often
+ * than about every {@link #MIN_WRITE_INTERVAL_MILLIS} ms, so the points recorded for a series
+ * between two writes are averaged into one point, and every series is written in the same
+ * {@code createTimeSeries} call, up to {@link #MAX_SERIES_PER_REQUEST} series per call.
+ *
+ * <p>There is no background flush, since App Engine standard apps should not keep threads running
+ * outside of requests. Callers flush at the end of each request, and points that are too recent to
+ * write are written by a later request.
+ */
+class TimeSeriesBuffer {
+  static final int MAX_SERIES_PER_REQUEST = 200;
+  static final long MIN_WRITE_INTERVAL_MILLIS = 5000;
+
+  // The points recorded for one series since the last write.
+  private static class Aggregate {
+    private long sum;
+    private long count;
+    private Timestamp endTime;
+  }
+
+  private final MetricServiceClient client;
+  private final String projectName;
+  // Keyed by the series without its points.
+  private final Map<TimeSeries, Aggregate> pending = new LinkedHashMap<>();
+  private long lastWriteMillis;
+
+  TimeSeriesBuffer(MetricServiceClient client, String projectName) {
+    this.client = client;
+    this.projectName = projectName;
+  }
+
+  /** Add the points of a time series to the aggregate of its series. */
+  synchronized void add(TimeSeries timeSeries) {
+    Aggregate aggregate =
+        pending.computeIfAbsent(timeSeries.toBuilder().clearPoints().build(), k -> new Aggregate());
+    for (Point point : timeSeries.getPointsList()) {
+      aggregate.sum += point.getValue().getInt64Value();
+      aggregate.count++;
+      aggregate.endTime = point.getInterval().getEndTime();
+    }
+  }
+
+  /**
+   * Write the aggregated points, unless the last write was too recent for the series to be written
+   * again. The points are then kept for a later flush.
+   *
+   * @return false if points were kept for a later flush
+   */
+  synchronized boolean flush() {
+    long now = System.currentTimeMillis();
+    if (pending.isEmpty()) {
+      return true;
+    }
+    if (now - lastWriteMillis < MIN_WRITE_INTERVAL_MILLIS) {
+      return false;
+    }
+    List<TimeSeries> series = new ArrayList<>(pending.size());
+    for (Map.Entry<TimeSeries, Aggregate> entry : pending.entrySet()) {
+      series.add(toTimeSeries(entry.getKey(), entry.getValue(), now));
+    }
+    pending.clear();
+    lastWriteMillis = now;
+
+    for (List<TimeSeries> batch : Lists.partition(series, MAX_SERIES_PER_REQUEST)) {
+      CreateTimeSeriesRequest request =
+          CreateTimeSeriesRequest.newBuilder()
+              .setName(projectName)
+              .addAllTimeSeries(batch)
+              .build();
+      client.createTimeSeries(request);
+    }
+    return true;
+  }
+
+  /** Number of series with points waiting to be written. */
+  synchronized int size() {
+    return pending.size();
+  }
+
+  private static TimeSeries toTimeSeries(TimeSeries series, Aggregate aggregate, long nowMillis) {
+    Timestamp endTime =
+        aggregate.endTime == null || aggregate.endTime.equals(Timestamp.getDefaultInstance())
+            ? Timestamps.fromMillis(nowMillis)
+            : aggregate.endTime;
+    Point point =
+        Point.newBuilder()
+            .setInterval(TimeInterval.newBuilder().setEndTime(endTime))
+            .setValue(TypedValue.newBuilder().setInt64Value(aggregate.sum / aggregate.count))
+            .build();
+    return series.toBuilder().addPoints(point).build();
+  }
+}
@@ -16,21 +16,21 @@
 
 package com.example.appengine.bigquerylogging;
 
-import com.google.common.collect.Collections2;
-import com.google.common.collect.Lists;
+import com.google.api.MetricDescriptor.MetricKind;
 import com.google.monitoring.v3.Point;
 import com.google.monitoring.v3.TimeSeries;
 import com.google.protobuf.Timestamp;
-import java.util.Collections;
-import java.util.Comparator;
+import com.google.protobuf.util.Timestamps;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 public abstract class TimeSeriesSummary<T> {
   private String name;
   private Timestamp mostRecentRunTime;
   T mostRecentValue;
-  List<T> values;
+  int count;
 
   public static TimeSeriesSummary fromTimeSeries(TimeSeries timeSeries) {
     switch (timeSeries.getValueType()) {
@@ -38,6 +38,10 @@ public abstract class TimeSeriesSummary<T> {
         return new StringTimeSeriesSummary(timeSeries);
       case INT64:
         return new Int64TimeSeriesSummary(timeSeries);
+      case DOUBLE:
+        return new DoubleTimeSeriesSummary(timeSeries);
+      case DISTRIBUTION:
+        return new DistributionTimeSeriesSummary(timeSeries);
       default:
         return null;
     }
@@ -45,15 +49,17 @@ public abstract class TimeSeriesSummary<T> {
 
   private TimeSeriesSummary(TimeSeries timeSeries) {
     name = timeSeries.getMetric().getType();
+    count = timeSeries.getPointsCount();
   }
 
-  Point getMostRecentPoint(TimeSeries timeSeries) {
-    Point max =
-        Collections.max(
-            timeSeries.getPointsList(),
-            Comparator.comparingLong(p -> p.getInterval().getEndTime().getSeconds()));
-    mostRecentRunTime = max.getInterval().getEndTime();
-    return max;
+  // Records the end time of a point, returning true if it is the most recent seen so far.
+  boolean observeEndTime(Point point) {
+    Timestamp endTime = point.getInterval().getEndTime();
+    if (mostRecentRunTime == null || endTime.getSeconds() > mostRecentRunTime.getSeconds()) {
+      mostRecentRunTime = endTime;
+      return true;
+    }
+    return false;
   }
 
   public String getName() {
@@ -68,49 +74,208 @@ public abstract class TimeSeriesSummary<T> {
     return mostRecentRunTime;
   }
 
-  public List<T> getValues() {
-    return values;
+  public int getCount() {
+    return count;
   }
 
   public abstract T getAverage();
 
   public static class StringTimeSeriesSummary extends TimeSeriesSummary<String> {
+    private String mostFrequentValue;
+
     private StringTimeSeriesSummary(TimeSeries timeSeries) {
       super(timeSeries);
-      Point max = getMostRecentPoint(timeSeries);
-      if (max == null) {
-        return;
+      Map<String, Integer> frequencies = new HashMap<>();
+      int maxFrequency = 0;
+      for (Point point : timeSeries.getPointsList()) {
+        String value = point.getValue().getStringValue();
+        if (observeEndTime(point)) {
+          mostRecentValue = value;
+        }
+        int frequency = frequencies.merge(value, 1, Integer::sum);
+        if (frequency > maxFrequency) {
+          maxFrequency = frequency;
+          mostFrequentValue = value;
+        }
       }
-      mostRecentValue = max.getValue().getStringValue();
-      values =
-          Lists.newArrayList(
-              Collections2.transform(
-                  timeSeries.getPointsList(), point -> point.getValue().getStringValue()));
     }
 
+    /** Strings have no average, so the most frequent value is reported instead. */
     @Override
     public String getAverage() {
-      return values.stream().collect(Collectors.joining(","));
+      return mostFrequentValue;
     }
   }
 
-  public static class Int64TimeSeriesSummary extends TimeSeriesSummary<Long> {
+  /**
+   * Summary statistics for a numeric time series, computed in a single pass over the points and
+   * kept in primitive arrays rather than boxed lists.
+   */
+  public abstract static class NumericTimeSeriesSummary<T extends Number>
+      extends TimeSeriesSummary<T> {
+    private final boolean cumulative;
+    private double mean;
+    private double sumOfSquaredDeviation;
+    private double sum;
+    private long earliestMillis = Long.MAX_VALUE;
+    private long latestMillis = Long.MIN_VALUE;
+    private double earliestValue;
+    private double latestValue;
+
+    private NumericTimeSeriesSummary(TimeSeries timeSeries) {
+      super(timeSeries);
+      cumulative = timeSeries.getMetricKind() == MetricKind.CUMULATIVE;
+    }
+
+    // Adds the n-th value (counting from 1) to the running statistics.
+    void accumulate(Point point, int n, double value) {
+      // Welford's algorithm keeps the variance numerically stable in one pass.
+      double delta = value - mean;
+      mean += delta / n;
+      sumOfSquaredDeviation += delta * (value - mean);
+      sum += value;
+
+      long endMillis = Timestamps.toMillis(point.getInterval().getEndTime());
+      if (endMillis < earliestMillis) {
+        earliestMillis = endMillis;
+        earliestValue = value;
+      }
+      if (endMillis > latestMillis) {
+        latestMillis = endMillis;
+        latestValue = value;
+      }
+    }
+
+    public double getMean() {
+      return mean;
+    }
+
+    public double getStandardDeviation() {
+      return count > 1 ? Math.sqrt(sumOfSquaredDeviation / (count - 1)) : 0;
+    }
+
+    /**
+     * Returns the per-second rate over the period covered by the points: the increase of a
+     * cumulative metric, or the sum of the values for gauge and delta metrics.
+     */
+    public double getRatePerSecond() {
+      if (latestMillis <= earliestMillis) {
+        return 0;
+      }
+      double total = cumulative ? latestValue - earliestValue : sum;
+      return total * 1000 / (latestMillis - earliestMillis);
+    }
+
+    public abstract T getMin();
+
+    public abstract T getMax();
+
+    /**
+     * Returns the nearest-rank percentile of the values.
+     *
+     * @param percentile a value between 0 and 100
+     */
+    public abstract T getPercentile(double percentile);
+
+    int rank(double percentile) {
+      int rank = (int) Math.ceil(percentile / 100 * count);
+      return Math.min(Math.max(rank, 1), count) - 1;
+    }
+  }
+
+  public static class Int64TimeSeriesSummary extends NumericTimeSeriesSummary<Long> {
+    private final long[] sortedValues;
+
     private Int64TimeSeriesSummary(TimeSeries timeSeries) {
       super(timeSeries);
-      Point max = getMostRecentPoint(timeSeries);
-      if (max == null) {
-        return;
+      List<Point> points = timeSeries.getPointsList();
+      sortedValues = new long[points.size()];
+      for (int i = 0; i < sortedValues.length; i++) {
+        Point point = points.get(i);
+        long value = point.getValue().getInt64Value();
+        sortedValues[i] = value;
+        accumulate(point, i + 1, value);
+        if (observeEndTime(point)) {
+          mostRecentValue = value;
+        }
       }
-      mostRecentValue = max.getValue().getInt64Value();
-      values =
-          Lists.newArrayList(
-              Collections2.transform(
-                  timeSeries.getPointsList(), point -> point.getValue().getInt64Value()));
+      Arrays.sort(sortedValues);
     }
 
     @Override
     public Long getAverage() {
-      return values.stream().collect(Collectors.averagingLong(Long::longValue)).longValue();
+      return Math.round(getMean());
+    }
+
+    @Override
+    public Long getMin() {
+      return sortedValues.length == 0 ? null : sortedValues[0];
+    }
+
+    @Override
+    public Long getMax() {
+      return sortedValues.length == 0 ? null : sortedValues[sortedValues.length - 1];
+    }
+
+    @Override
+    public Long getPercentile(double percentile) {
+      return sortedValues.length == 0 ? null : sortedValues[rank(percentile)];
+    }
+  }
+
+  public static class DoubleTimeSeriesSummary extends NumericTimeSeriesSummary<Double> {
+    private final double[] sortedValues;
+
+    private DoubleTimeSeriesSummary(TimeSeries timeSeries) {
+      super(timeSeries);
+      List<Point> points = timeSeries.getPointsList();
+      sortedValues = new double[points.size()];
+      for (int i = 0; i < sortedValues.length; i++) {
+        Point point = points.get(i);
+        double value = valueOf(point);
+        sortedValues[i] = value;
+        accumulate(point, i + 1, value);
+        if (observeEndTime(point)) {
+          mostRecentValue = value;
+        }
+      }
+      Arrays.sort(sortedValues);
+    }
+
+    double valueOf(Point point) {
+      return point.getValue().getDoubleValue();
+    }
+
+    @Override
+    public Double getAverage() {
+      return getMean();
+    }
+
+    @Override
+    public Double getMin() {
+      return sortedValues.length == 0 ? null : sortedValues[0];
+    }
+
+    @Override
+    public Double getMax() {
+      return sortedValues.length == 0 ? null : sortedValues[sortedValues.length - 1];
+    }
+
+    @Override
+    public Double getPercentile(double percentile) {
+      return sortedValues.length == 0 ? null : sortedValues[rank(percentile)];
+    }
+  }
+
+  /** Summarizes a distribution metric by the mean of each point's distribution. */
+  public static class DistributionTimeSeriesSummary extends DoubleTimeSeriesSummary {
+    private DistributionTimeSeriesSummary(TimeSeries timeSeries) {
+      super(timeSeries);
+    }
+
+    @Override
+    double valueOf(Point point) {
+      return point.getValue().getDistributionValue().getMean();
     }
   }
 }
@@ -22,7 +22,11 @@
       <th>Count</th>
       <th>Most Recent End Time</th>
       <th>Most Recent Value</th>
-      <th>Average/Values</th>
+      <th>Average</th>
+      <th>Min / Max</th>
+      <th>Std Dev</th>
+      <th>p50 / p95 / p99</th>
+      <th>Rate (per second)</th>
       </tr>
       <%= BigQueryHome.getMetricAverages() %>
     </table>
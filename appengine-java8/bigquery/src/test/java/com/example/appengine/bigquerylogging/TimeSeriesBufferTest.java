@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.appengine.bigquerylogging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.Metric;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import com.google.cloud.monitoring.v3.stub.MetricServiceStub;
+import com.google.monitoring.v3.CreateTimeSeriesRequest;
+import com.google.monitoring.v3.Point;
+import com.google.monitoring.v3.TimeSeries;
+import com.google.monitoring.v3.TypedValue;
+import com.google.protobuf.Empty;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Tests for batching of metric writes.
+ */
+@RunWith(JUnit4.class)
+public class TimeSeriesBufferTest {
+  private TimeSeriesBuffer buffer;
+
+  @Mock
+  private MetricServiceStub metricsServiceStub;
+  @Mock
+  private UnaryCallable<CreateTimeSeriesRequest, Empty> createTimeSeriesCallable;
+
+  @Captor
+  private ArgumentCaptor<CreateTimeSeriesRequest> createTimeSeriesRequest;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(metricsServiceStub.createTimeSeriesCallable()).thenReturn(createTimeSeriesCallable);
+    when(createTimeSeriesCallable.call(any(CreateTimeSeriesRequest.class)))
+        .thenReturn(Empty.getDefaultInstance());
+
+    MetricServiceClient metricsClient = MetricServiceClient.create(metricsServiceStub);
+    buffer = new TimeSeriesBuffer(metricsClient, "projects/test");
+  }
+
+  @Test
+  public void testSplitsLargeFlushes() {
+    for (int i = 0; i < TimeSeriesBuffer.MAX_SERIES_PER_REQUEST + 50; i++) {
+      buffer.add(series("custom.googleapis.com/metric" + i, i));
+    }
+    assertEquals(TimeSeriesBuffer.MAX_SERIES_PER_REQUEST + 50, buffer.size());
+    buffer.flush();
+    assertEquals(0, buffer.size());
+
+    verify(createTimeSeriesCallable, times(2)).call(createTimeSeriesRequest.capture());
+    List<CreateTimeSeriesRequest> requests = createTimeSeriesRequest.getAllValues();
+    assertEquals(TimeSeriesBuffer.MAX_SERIES_PER_REQUEST, requests.get(0).getTimeSeriesCount());
+    assertEquals(50, requests.get(1).getTimeSeriesCount());
+  }
+
+  @Test
+  public void testAggregatesPointsOfTheSameSeries() {
+    buffer.add(series("custom.googleapis.com/queryDuration", 1));
+    buffer.add(series("custom.googleapis.com/rowsReturned", 2));
+    buffer.add(series("custom.googleapis.com/queryDuration", 3));
+    assertEquals(2, buffer.size());
+    buffer.flush();
+
+    verify(createTimeSeriesCallable, times(1)).call(createTimeSeriesRequest.capture());
+    CreateTimeSeriesRequest request = createTimeSeriesRequest.getValue();
+    assertEquals(2, request.getTimeSeriesCount());
+    TimeSeries queryDuration = request.getTimeSeries(0);
+    assertEquals("custom.googleapis.com/queryDuration", queryDuration.getMetric().getType());
+    assertEquals(1, queryDuration.getPointsCount());
+    assertEquals(2, queryDuration.getPoints(0).getValue().getInt64Value());
+    assertEquals(2, request.getTimeSeries(1).getPoints(0).getValue().getInt64Value());
+  }
+
+  @Test
+  public void testDoesNotWriteSeriesAgainTooSoon() {
+    buffer.add(series("custom.googleapis.com/queryDuration", 1));
+    assertTrue(buffer.flush());
+    buffer.add(series("custom.googleapis.com/queryDuration", 2));
+    assertFalse(buffer.flush());
+
+    // The second point waits for a later flush.
+    verify(createTimeSeriesCallable, times(1)).call(any(CreateTimeSeriesRequest.class));
+    assertEquals(1, buffer.size());
+  }
+
+  private static TimeSeries series(String type, long value) {
+    return TimeSeries.newBuilder()
+        .setMetric(Metric.newBuilder().setType(type).build())
+        .addPoints(
+            Point.newBuilder().setValue(TypedValue.newBuilder().setInt64Value(value).build()))
+        .build();
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.appengine.bigquerylogging;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertEquals;
+
+import com.example.appengine.bigquerylogging.TimeSeriesSummary.DoubleTimeSeriesSummary;
+import com.example.appengine.bigquerylogging.TimeSeriesSummary.Int64TimeSeriesSummary;
+import com.google.api.Distribution;
+import com.google.api.MetricDescriptor.MetricKind;
+import com.google.api.MetricDescriptor.ValueType;
+import com.google.monitoring.v3.Point;
+import com.google.monitoring.v3.TimeInterval;
+import com.google.monitoring.v3.TimeSeries;
+import com.google.monitoring.v3.TypedValue;
+import com.google.protobuf.util.Timestamps;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for time series summary statistics.
+ */
+@RunWith(JUnit4.class)
+public class TimeSeriesSummaryTest {
+
+  @Test
+  public void testInt64Summary() {
+    TimeSeries.Builder builder =
+        TimeSeries.newBuilder().setValueType(ValueType.INT64).setMetricKind(MetricKind.GAUGE);
+    // Points are listed newest first, as returned by listTimeSeries.
+    for (int i = 100; i >= 1; i--) {
+      builder.addPoints(point(i, TypedValue.newBuilder().setInt64Value(i).build()));
+    }
+
+    Int64TimeSeriesSummary summary =
+        (Int64TimeSeriesSummary) TimeSeriesSummary.fromTimeSeries(builder.build());
+
+    assertEquals(100, summary.getCount());
+    assertEquals(Long.valueOf(100), summary.getMostRecentValue());
+    assertEquals(Long.valueOf(1), summary.getMin());
+    assertEquals(Long.valueOf(100), summary.getMax());
+    assertEquals(50.5, summary.getMean(), 1e-9);
+    assertEquals(29.011, summary.getStandardDeviation(), 1e-3);
+    assertEquals(Long.valueOf(50), summary.getPercentile(50));
+    assertEquals(Long.valueOf(95), summary.getPercentile(95));
+    assertEquals(Long.valueOf(99), summary.getPercentile(99));
+    // 5050 spread over the 99 seconds between the first and last point.
+    assertEquals(5050.0 / 99, summary.getRatePerSecond(), 1e-9);
+  }
+
+  @Test
+  public void testCumulativeRate() {
+    TimeSeries timeSeries =
+        TimeSeries.newBuilder()
+            .setValueType(ValueType.DOUBLE)
+            .setMetricKind(MetricKind.CUMULATIVE)
+            .addPoints(point(10, TypedValue.newBuilder().setDoubleValue(30).build()))
+            .addPoints(point(0, TypedValue.newBuilder().setDoubleValue(10).build()))
+            .build();
+
+    DoubleTimeSeriesSummary summary =
+        (DoubleTimeSeriesSummary) TimeSeriesSummary.fromTimeSeries(timeSeries);
+
+    assertEquals(2.0, summary.getRatePerSecond(), 1e-9);
+    assertEquals(Double.valueOf(30), summary.getMostRecentValue());
+  }
+
+  @Test
+  public void testDistributionSummary() {
+    TimeSeries timeSeries =
+        TimeSeries.newBuilder()
+            .setValueType(ValueType.DISTRIBUTION)
+            .addPoints(point(2, distribution(4)))
+            .addPoints(point(1, distribution(2)))
+            .build();
+
+    DoubleTimeSeriesSummary summary =
+        (DoubleTimeSeriesSummary) TimeSeriesSummary.fromTimeSeries(timeSeries);
+
+    assertEquals(Double.valueOf(3), summary.getAverage());
+    assertEquals(Double.valueOf(2), summary.getMin());
+    assertEquals(Double.valueOf(4), summary.getMax());
+  }
+
+  @Test
+  public void testStringSummary() {
+    TimeSeries timeSeries =
+        TimeSeries.newBuilder()
+            .setValueType(ValueType.STRING)
+            .addPoints(point(3, TypedValue.newBuilder().setStringValue("b").build()))
+            .addPoints(point(2, TypedValue.newBuilder().setStringValue("a").build()))
+            .addPoints(point(1, TypedValue.newBuilder().setStringValue("a").build()))
+            .build();
+
+    TimeSeriesSummary<?> summary = TimeSeriesSummary.fromTimeSeries(timeSeries);
+
+    assertThat(summary.getMostRecentValue()).isEqualTo("b");
+    assertThat(summary.getAverage()).isEqualTo("a");
+  }
+
+  private static Point point(long endSeconds, TypedValue value) {
+    return Point.newBuilder()
+        .setInterval(
+            TimeInterval.newBuilder().setEndTime(Timestamps.fromSeconds(endSeconds)).build())
+        .setValue(value)
+        .build();
+  }
+
+  private static TypedValue distribution(double mean) {
+    return TypedValue.newBuilder()
+        .setDistributionValue(Distribution.newBuilder().setCount(1).setMean(mean).build())
+        .build();
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.appengine.pubsub;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.FullEntity;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups entities written by concurrent requests into a single Datastore {@code put} call.
+ *
+ * <p>The first request to join an empty batch becomes its leader: it waits until the batch is
+ * full or {@code maxDelayMillis} has elapsed, then writes every entity in the batch with one RPC.
+ * All requests in the batch block until that write completes, so a caller returning from {@link
+ * #put} knows its entity is durable. No background threads are used, which keeps this compatible
+ * with the App Engine standard request model.
+ */
+class EntityBatcher {
+
+  private final Datastore datastore;
+  private final int maxBatchSize;
+  private final long maxDelayMillis;
+
+  // Guarded by this.
+  private Batch current;
+
+  EntityBatcher(Datastore datastore, int maxBatchSize, long maxDelayMillis) {
+    this.datastore = datastore;
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayMillis = maxDelayMillis;
+  }
+
+  /**
+   * Add an entity to the current batch and wait for the batch to be written.
+   *
+   * @param entity entity to store, usually with an incomplete key
+   */
+  void put(FullEntity<?> entity) {
+    Batch batch;
+    boolean leader = false;
+    synchronized (this) {
+      if (current == null) {
+        current = new Batch();
+        leader = true;
+      }
+      batch = current;
+      batch.entities.add(entity);
+      if (batch.entities.size() >= maxBatchSize) {
+        // Close the batch so later callers start a new one.
+        current = null;
+        batch.full.countDown();
+      }
+    }
+
+    if (leader) {
+      flush(batch);
+    }
+
+    try {
+      batch.done.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private void flush(Batch batch) {
+    boolean interrupted = false;
+    try {
+      batch.full.await(maxDelayMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      // Still write the batch: other requests are waiting on it.
+      interrupted = true;
+    }
+    FullEntity<?>[] entities;
+    synchronized (this) {
+      if (current == batch) {
+        current = null;
+      }
+      entities = batch.entities.toArray(new FullEntity<?>[0]);
+    }
+    try {
+      // Incomplete keys are allocated as part of the put, saving an allocateId round trip.
+      datastore.put(entities);
+      batch.done.complete(null);
+    } catch (RuntimeException e) {
+      batch.done.completeExceptionally(e);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static class Batch {
+    private final List<FullEntity<?>> entities = new ArrayList<>();
+    private final CountDownLatch full = new CountDownLatch(1);
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+  }
+}
@@ -19,7 +19,8 @@ package com.example.appengine.pubsub;
 import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreOptions;
 import com.google.cloud.datastore.Entity;
-import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.FullEntity;
+import com.google.cloud.datastore.IncompleteKey;
 import com.google.cloud.datastore.KeyFactory;
 import com.google.cloud.datastore.Query;
 import com.google.cloud.datastore.QueryResults;
@@ -32,23 +33,28 @@ public class MessageRepositoryImpl implements MessageRepository {
 
   private static MessageRepositoryImpl instance;
 
+  // Writes from concurrent push requests are grouped into batches of at most this many entities
+  // (the Datastore limit per commit), waiting at most MAX_BATCH_DELAY_MS for a batch to fill.
+  private static final int MAX_BATCH_SIZE = 500;
+  private static final long MAX_BATCH_DELAY_MS = 20;
+
+  // The client is thread-safe, so one instance is shared by all requests.
+  private final Datastore datastore = DatastoreOptions.getDefaultInstance().getService();
+  private final EntityBatcher batcher =
+      new EntityBatcher(datastore, MAX_BATCH_SIZE, MAX_BATCH_DELAY_MS);
+
   private String messagesKind = "messages";
-  private KeyFactory keyFactory = getDatastoreInstance().newKeyFactory().setKind(messagesKind);
+  private KeyFactory keyFactory = datastore.newKeyFactory().setKind(messagesKind);
   private String claimsKind = "claims";
-  private KeyFactory claimsKindKeyFactory =
-      getDatastoreInstance().newKeyFactory().setKind(claimsKind);
+  private KeyFactory claimsKindKeyFactory = datastore.newKeyFactory().setKind(claimsKind);
   private String tokensKind = "tokens";
-  private KeyFactory tokensKindKeyFactory =
-      getDatastoreInstance().newKeyFactory().setKind(tokensKind);
+  private KeyFactory tokensKindKeyFactory = datastore.newKeyFactory().setKind(tokensKind);
 
   @Override
   public void save(Message message) {
     // Save message to "messages"
-    Datastore datastore = getDatastoreInstance();
-    Key key = datastore.allocateId(keyFactory.newKey());
-
-    Entity.Builder messageEntityBuilder =
-        Entity.newBuilder(key).set("messageId", message.getMessageId());
+    FullEntity.Builder<IncompleteKey> messageEntityBuilder =
+        FullEntity.newBuilder(keyFactory.newKey()).set("messageId", message.getMessageId());
 
     if (message.getData() != null) {
       messageEntityBuilder = messageEntityBuilder.set("data", message.getData());
@@ -57,13 +63,12 @@ public class MessageRepositoryImpl implements MessageRepository {
     if (message.getPublishTime() != null) {
       messageEntityBuilder = messageEntityBuilder.set("publishTime", message.getPublishTime());
     }
-    datastore.put(messageEntityBuilder.build());
+    batcher.put(messageEntityBuilder.build());
   }
 
   @Override
   public List<Message> retrieve(int limit) {
     // Get Message saved in Datastore
-    Datastore datastore = getDatastoreInstance();
     Query<Entity> query =
         Query.newEntityQueryBuilder()
             .setKind(messagesKind)
@@ -91,19 +96,16 @@ public class MessageRepositoryImpl implements MessageRepository {
 
   @Override
   public void saveClaim(String claim) {
-    // Save message to "messages"
-    Datastore datastore = getDatastoreInstance();
-    Key key = datastore.allocateId(claimsKindKeyFactory.newKey());
-
-    Entity.Builder claimEntityBuilder = Entity.newBuilder(key).set("claim", claim);
+    // Save claim to "claims"
+    FullEntity.Builder<IncompleteKey> claimEntityBuilder =
+        FullEntity.newBuilder(claimsKindKeyFactory.newKey()).set("claim", claim);
 
-    datastore.put(claimEntityBuilder.build());
+    batcher.put(claimEntityBuilder.build());
   }
 
   @Override
   public List<String> retrieveClaims(int limit) {
     // Get claim saved in Datastore
-    Datastore datastore = getDatastoreInstance();
     Query<Entity> query = Query.newEntityQueryBuilder().setKind(claimsKind).setLimit(limit).build();
     QueryResults<Entity> results = datastore.run(query);
 
@@ -120,19 +122,16 @@ public class MessageRepositoryImpl implements MessageRepository {
 
   @Override
   public void saveToken(String token) {
-    // Save message to "messages"
-    Datastore datastore = getDatastoreInstance();
-    Key key = datastore.allocateId(tokensKindKeyFactory.newKey());
-
-    Entity.Builder tokenEntityBuilder = Entity.newBuilder(key).set("token", token);
+    // Save token to "tokens"
+    FullEntity.Builder<IncompleteKey> tokenEntityBuilder =
+        FullEntity.newBuilder(tokensKindKeyFactory.newKey()).set("token", token);
 
-    datastore.put(tokenEntityBuilder.build());
+    batcher.put(tokenEntityBuilder.build());
   }
 
   @Override
   public List<String> retrieveTokens(int limit) {
     // Get token saved in Datastore
-    Datastore datastore = getDatastoreInstance();
     Query<Entity> query = Query.newEntityQueryBuilder().setKind(tokensKind).setLimit(limit).build();
     QueryResults<Entity> results = datastore.run(query);
 
@@ -147,10 +146,6 @@ public class MessageRepositoryImpl implements MessageRepository {
     return tokens;
   }
 
-  private Datastore getDatastoreInstance() {
-    return DatastoreOptions.getDefaultInstance().getService();
-  }
-
   private MessageRepositoryImpl() {}
 
   // retrieve a singleton instance
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.appengine.search;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Index;
+import com.google.appengine.api.search.OperationResult;
+import com.google.appengine.api.search.PutException;
+import com.google.appengine.api.search.PutResponse;
+import com.google.appengine.api.search.StatusCode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexes large numbers of documents by grouping them into batched asynchronous puts.
+ *
+ * <p>Documents are sent in batches of up to {@link #MAX_BATCH_SIZE}, with at most {@code
+ * maxInFlight} batches outstanding at once. Documents that fail with a transient error are
+ * scheduled for another attempt with exponential backoff; the retry is issued by a later call to
+ * {@link #add} or {@link #flush} once its delay has expired, so the caller is never put to sleep
+ * while there is other work to do.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public class BulkIndexer implements AutoCloseable {
+
+  /** The maximum number of documents the Search API accepts in one put. */
+  public static final int MAX_BATCH_SIZE = 200;
+
+  private final Index index;
+  private final int maxInFlight;
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+
+  private final List<Document> buffer = new ArrayList<>();
+  private final Deque<Batch> inFlight = new ArrayDeque<>();
+  private final DelayQueue<Batch> retries = new DelayQueue<>();
+  private final List<String> failedDocumentIds = new ArrayList<>();
+  private PutException lastFailure;
+
+  private long startMillis;
+  private long indexedCount;
+  private long retryCount;
+
+  public BulkIndexer(Index index) {
+    this(index, 4, 3, 2000);
+  }
+
+  /**
+   * Create a bulk indexer.
+   *
+   * @param index The index to put documents into.
+   * @param maxInFlight The maximum number of batches being indexed at once.
+   * @param maxAttempts The number of attempts made for each document.
+   * @param initialBackoffMillis The delay before the first retry, doubled for each later retry.
+   */
+  public BulkIndexer(Index index, int maxInFlight, int maxAttempts, long initialBackoffMillis) {
+    this.index = index;
+    this.maxInFlight = maxInFlight;
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMillis = initialBackoffMillis;
+  }
+
+  /**
+   * Add a document to be indexed.
+   *
+   * @param document A document to add.
+   * @throws InterruptedException When interrupted while waiting for an earlier batch.
+   */
+  public void add(Document document) throws InterruptedException {
+    if (startMillis == 0) {
+      startMillis = System.currentTimeMillis();
+    }
+    buffer.add(document);
+    if (buffer.size() >= MAX_BATCH_SIZE) {
+      submit(new Batch(new ArrayList<>(buffer), 1));
+      buffer.clear();
+    }
+    submitDueRetries();
+  }
+
+  /**
+   * Index all buffered documents and wait until every document has either been indexed or has
+   * used up its attempts.
+   *
+   * @throws InterruptedException When interrupted while waiting.
+   */
+  public void flush() throws InterruptedException {
+    if (!buffer.isEmpty()) {
+      submit(new Batch(new ArrayList<>(buffer), 1));
+      buffer.clear();
+    }
+    while (!inFlight.isEmpty() || !retries.isEmpty()) {
+      if (!inFlight.isEmpty()) {
+        complete(inFlight.removeFirst());
+      } else {
+        // Nothing else to do, so wait for the next retry to become due.
+        submit(retries.take());
+      }
+      submitDueRetries();
+    }
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    flush();
+  }
+
+  /** Returns the number of documents indexed so far. */
+  public long getIndexedCount() {
+    return indexedCount;
+  }
+
+  /** Returns the number of document retries issued so far. */
+  public long getRetryCount() {
+    return retryCount;
+  }
+
+  /** Returns the ids of documents that could not be indexed. */
+  public List<String> getFailedDocumentIds() {
+    return Collections.unmodifiableList(failedDocumentIds);
+  }
+
+  /** Returns the error of the last document that could not be indexed, or null if none failed. */
+  public PutException getLastFailure() {
+    return lastFailure;
+  }
+
+  /** Returns the indexing rate since the first document was added. */
+  public double getDocumentsPerSecond() {
+    long elapsedMillis = System.currentTimeMillis() - startMillis;
+    if (startMillis == 0 || elapsedMillis == 0) {
+      return 0;
+    }
+    return indexedCount * 1000.0 / elapsedMillis;
+  }
+
+  private void submit(Batch batch) throws InterruptedException {
+    while (inFlight.size() >= maxInFlight) {
+      complete(inFlight.removeFirst());
+    }
+    batch.future = index.putAsync(batch.documents);
+    inFlight.addLast(batch);
+  }
+
+  private void submitDueRetries() throws InterruptedException {
+    for (Batch retry = retries.poll(); retry != null; retry = retries.poll()) {
+      submit(retry);
+    }
+  }
+
+  private void complete(Batch batch) throws InterruptedException {
+    List<OperationResult> results;
+    PutException putException;
+    try {
+      batch.future.get();
+      indexedCount += batch.documents.size();
+      return;
+    } catch (ExecutionException e) {
+      if (!(e.getCause() instanceof PutException)) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new RuntimeException(e.getCause());
+      }
+      putException = (PutException) e.getCause();
+      results = putException.getResults();
+      if (results == null || results.size() != batch.documents.size()) {
+        // The whole call failed, so every document shares the same result.
+        results = Collections.nCopies(batch.documents.size(), putException.getOperationResult());
+      }
+    }
+
+    List<Document> retryDocuments = new ArrayList<>();
+    for (int i = 0; i < results.size(); i++) {
+      Document document = batch.documents.get(i);
+      StatusCode code = results.get(i).getCode();
+      if (StatusCode.OK.equals(code)) {
+        indexedCount++;
+      } else if (StatusCode.TRANSIENT_ERROR.equals(code) && batch.attempt < maxAttempts) {
+        retryDocuments.add(document);
+      } else {
+        failedDocumentIds.add(document.getId());
+        lastFailure = putException;
+      }
+    }
+    if (!retryDocuments.isEmpty()) {
+      retryCount += retryDocuments.size();
+      Batch retry = new Batch(retryDocuments, batch.attempt + 1);
+      // easy exponential backoff
+      retry.dueMillis =
+          System.currentTimeMillis() + (initialBackoffMillis << (batch.attempt - 1));
+      retries.add(retry);
+    }
+  }
+
+  private static class Batch implements Delayed {
+    private final List<Document> documents;
+    private final int attempt;
+    private long dueMillis;
+    private Future<PutResponse> future;
+
+    Batch(List<Document> documents, int attempt) {
+      this.documents = documents;
+      this.attempt = attempt;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(dueMillis, ((Batch) other).dueMillis);
+    }
+  }
+}
@@ -23,8 +23,6 @@ import com.google.appengine.api.search.Field;
 import com.google.appengine.api.search.GetRequest;
 import com.google.appengine.api.search.GetResponse;
 import com.google.appengine.api.search.Index;
-import com.google.appengine.api.search.IndexSpec;
-import com.google.appengine.api.search.SearchServiceFactory;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -57,9 +55,7 @@ public class DeleteServlet extends HttpServlet {
   private static final String SEARCH_INDEX = "searchIndexForDelete";
 
   private Index getIndex() {
-    IndexSpec indexSpec = IndexSpec.newBuilder().setName(SEARCH_INDEX).build();
-    Index index = SearchServiceFactory.getSearchService().getIndex(indexSpec);
-    return index;
+    return Utils.getIndex(SEARCH_INDEX);
   }
 
   @Override
@@ -58,9 +58,7 @@ public class SearchOptionServlet extends HttpServlet {
   private static final String SEARCH_INDEX = "searchOptionIndex";
 
   private Index getIndex() {
-    IndexSpec indexSpec = IndexSpec.newBuilder().setName(SEARCH_INDEX).build();
-    Index index = SearchServiceFactory.getSearchService().getIndex(indexSpec);
-    return index;
+    return Utils.getIndex(SEARCH_INDEX);
   }
 
   private Results<ScoredDocument> doSearch() {
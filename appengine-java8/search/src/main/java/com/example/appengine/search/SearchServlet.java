@@ -21,11 +21,9 @@ package com.example.appengine.search;
 import com.google.appengine.api.search.Document;
 import com.google.appengine.api.search.Field;
 import com.google.appengine.api.search.Index;
-import com.google.appengine.api.search.IndexSpec;
 import com.google.appengine.api.search.Results;
 import com.google.appengine.api.search.ScoredDocument;
 import com.google.appengine.api.search.SearchException;
-import com.google.appengine.api.search.SearchServiceFactory;
 import com.google.appengine.api.search.StatusCode;
 // [END search_document_import]
 // CHECKSTYLE:OFF
@@ -49,9 +47,7 @@ public class SearchServlet extends HttpServlet {
   private static final String SEARCH_INDEX = "searchIndex";
 
   private Index getIndex() {
-    IndexSpec indexSpec = IndexSpec.newBuilder().setName(SEARCH_INDEX).build();
-    Index index = SearchServiceFactory.getSearchService().getIndex(indexSpec);
-    return index;
+    return Utils.getIndex(SEARCH_INDEX);
   }
 
   @Override
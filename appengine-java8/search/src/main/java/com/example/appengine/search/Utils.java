@@ -16,6 +16,7 @@
 
 package com.example.appengine.search;
 
+import com.google.appengine.api.NamespaceManager;
 // [START index_import]
 
 import com.google.appengine.api.search.Document;
@@ -25,12 +26,34 @@ import com.google.appengine.api.search.PutException;
 import com.google.appengine.api.search.SearchServiceFactory;
 import com.google.appengine.api.search.StatusCode;
 // [END index_import]
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A utility class for the search API sample.
  */
 public class Utils {
 
+  // Index handles are bound to the namespace that was current when they were created.
+  private static final ConcurrentMap<String, Index> INDEXES = new ConcurrentHashMap<>();
+
+  /**
+   * Returns a cached handle for the index with the given name in the current namespace.
+   *
+   * @param indexName The name of the index.
+   * @return The index.
+   */
+  public static Index getIndex(String indexName) {
+    String namespace = NamespaceManager.get();
+    String key = (namespace == null ? "" : namespace) + "/" + indexName;
+    return INDEXES.computeIfAbsent(
+        key,
+        k -> {
+          IndexSpec indexSpec = IndexSpec.newBuilder().setName(indexName).build();
+          return SearchServiceFactory.getSearchService().getIndex(indexSpec);
+        });
+  }
+
   /**
    * Put a given document into an index with the given indexName.
    *
@@ -42,8 +65,7 @@ public class Utils {
   @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
   public static void indexADocument(String indexName, Document document)
       throws InterruptedException {
-    IndexSpec indexSpec = IndexSpec.newBuilder().setName(indexName).build();
-    Index index = SearchServiceFactory.getSearchService().getIndex(indexSpec);
+    Index index = getIndex(indexName);
 
     final int maxRetry = 3;
     int attempts = 0;
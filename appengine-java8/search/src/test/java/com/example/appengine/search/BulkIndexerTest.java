@@ -0,0 +1,123 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.appengine.search;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Field;
+import com.google.appengine.api.search.Index;
+import com.google.appengine.api.search.OperationResult;
+import com.google.appengine.api.search.PutException;
+import com.google.appengine.api.search.PutResponse;
+import com.google.appengine.api.search.StatusCode;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+
+public class BulkIndexerTest {
+
+  private static final String INDEX = "BulkIndexerTestIndex";
+  private static final int DOCUMENT_COUNT = 450;
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+
+  @Before
+  public void setUp() throws Exception {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void flush_indexesAllDocuments() throws Exception {
+    Index index = Utils.getIndex(INDEX);
+    try (BulkIndexer indexer = new BulkIndexer(index)) {
+      for (int i = 0; i < DOCUMENT_COUNT; i++) {
+        indexer.add(
+            Document.newBuilder()
+                .setId("doc" + i)
+                .addField(Field.newBuilder().setName("f").setText("v" + i))
+                .build());
+      }
+      indexer.flush();
+
+      assertWithMessage("Indexed document count")
+          .that(indexer.getIndexedCount())
+          .isEqualTo(DOCUMENT_COUNT);
+      assertWithMessage("Failed documents").that(indexer.getFailedDocumentIds()).isEmpty();
+    }
+    assertWithMessage("A value of the last document")
+        .that(index.get("doc" + (DOCUMENT_COUNT - 1)).getOnlyField("f").getText())
+        .isEqualTo("v" + (DOCUMENT_COUNT - 1));
+  }
+
+  @Test
+  public void flush_retriesTransientErrors() throws Exception {
+    Index index = mock(Index.class);
+    when(index.putAsync(ArgumentMatchers.<Iterable<Document>>any()))
+        .thenReturn(failedPut(StatusCode.TRANSIENT_ERROR))
+        .thenReturn(CompletableFuture.completedFuture((PutResponse) null));
+
+    BulkIndexer indexer = new BulkIndexer(index, 4, 3, 1);
+    indexer.add(Document.newBuilder().setId("doc0").build());
+    indexer.flush();
+
+    assertWithMessage("Indexed document count").that(indexer.getIndexedCount()).isEqualTo(1);
+    assertWithMessage("Retry count").that(indexer.getRetryCount()).isEqualTo(1);
+    assertWithMessage("Last failure").that(indexer.getLastFailure()).isNull();
+  }
+
+  @Test
+  public void flush_recordsFailedDocuments() throws Exception {
+    Index index = mock(Index.class);
+    CompletableFuture<PutResponse> failed = failedPut(StatusCode.PERMANENT_ERROR);
+    when(index.putAsync(ArgumentMatchers.<Iterable<Document>>any())).thenReturn(failed);
+
+    BulkIndexer indexer = new BulkIndexer(index, 4, 3, 1);
+    indexer.add(Document.newBuilder().setId("doc0").build());
+    indexer.flush();
+
+    assertWithMessage("Failed documents")
+        .that(indexer.getFailedDocumentIds())
+        .containsExactly("doc0");
+    assertWithMessage("Retry count").that(indexer.getRetryCount()).isEqualTo(0);
+    assertWithMessage("Last failure")
+        .that(indexer.getLastFailure().getOperationResult().getCode())
+        .isEqualTo(StatusCode.PERMANENT_ERROR);
+  }
+
+  private static CompletableFuture<PutResponse> failedPut(StatusCode code) {
+    CompletableFuture<PutResponse> future = new CompletableFuture<>();
+    future.completeExceptionally(new PutException(new OperationResult(code, "put failed")));
+    return future;
+  }
+
+  @Test
+  public void getIndex_returnsCachedHandle() {
+    assertWithMessage("Cached index handle")
+        .that(Utils.getIndex(INDEX))
+        .isSameInstanceAs(Utils.getIndex(INDEX));
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.taskqueue;
+
+import com.google.appengine.api.taskqueue.LeaseOptions;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.TaskHandle;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Leases tasks from a pull queue in batches, processes them concurrently and deletes the completed
+ * ones in batches.
+ *
+ * <p>Task processing runs on the supplied executor. All Task Queue API calls (lease, lease
+ * extension and delete) are made from the calling thread, so the executor's threads do not need an
+ * App Engine API environment.
+ */
+public class PullQueueWorker {
+
+  /** The maximum number of tasks that can be added or deleted in one call. */
+  static final int MAX_TASKS_PER_CALL = 100;
+
+  private static final Logger log = Logger.getLogger(PullQueueWorker.class.getName());
+
+  /** Processes the payload of a single task. */
+  public interface TaskProcessor {
+    void process(TaskHandle task) throws Exception;
+  }
+
+  private final Queue queue;
+  private final ExecutorService executor;
+  private final long leaseSeconds;
+  private final int leaseBatchSize;
+
+  /**
+   * Create a worker.
+   *
+   * @param queue the pull queue to work on
+   * @param executor runs task processing; its size bounds the number of concurrent tasks
+   * @param leaseSeconds lease period for each batch, extended while tasks are still running
+   * @param leaseBatchSize number of tasks leased at a time
+   */
+  public PullQueueWorker(
+      Queue queue, ExecutorService executor, long leaseSeconds, int leaseBatchSize) {
+    this.queue = queue;
+    this.executor = executor;
+    this.leaseSeconds = leaseSeconds;
+    this.leaseBatchSize = leaseBatchSize;
+  }
+
+  /**
+   * Add tasks to the queue using as few calls as possible.
+   *
+   * @return the number of tasks added
+   */
+  public int addTasks(List<TaskOptions> tasks) {
+    for (int i = 0; i < tasks.size(); i += MAX_TASKS_PER_CALL) {
+      queue.add(tasks.subList(i, Math.min(i + MAX_TASKS_PER_CALL, tasks.size())));
+    }
+    return tasks.size();
+  }
+
+  /**
+   * Lease, process and delete tasks until the queue has no more tasks to lease.
+   *
+   * @param tag only lease tasks with this tag, or all tasks if null
+   * @param processor processes each task; tasks it fails on are left in the queue
+   * @return the number of tasks processed and deleted
+   */
+  public int drain(String tag, TaskProcessor processor) throws InterruptedException {
+    int processed = 0;
+    while (true) {
+      LeaseOptions options =
+          LeaseOptions.Builder.withLeasePeriod(leaseSeconds, TimeUnit.SECONDS)
+              .countLimit(leaseBatchSize);
+      if (tag != null) {
+        options = options.tag(tag);
+      }
+      List<TaskHandle> tasks = queue.leaseTasks(options);
+      if (tasks.isEmpty()) {
+        return processed;
+      }
+      processed += process(tasks, processor);
+    }
+  }
+
+  /**
+   * Process a batch of leased tasks concurrently, extending their leases while they run, and
+   * delete the ones that completed.
+   *
+   * @return the number of tasks processed and deleted
+   */
+  public int process(List<TaskHandle> tasks, TaskProcessor processor)
+      throws InterruptedException {
+    List<TaskHandle> completed = processAll(tasks, processor);
+    for (int i = 0; i < completed.size(); i += MAX_TASKS_PER_CALL) {
+      queue.deleteTask(completed.subList(i, Math.min(i + MAX_TASKS_PER_CALL, completed.size())));
+    }
+    return completed.size();
+  }
+
+  /**
+   * Process a batch of leased tasks concurrently, extending their leases while they run. The
+   * completed tasks are not deleted.
+   *
+   * @return the current handles of the tasks that completed, for deleting them from the queue
+   */
+  public List<TaskHandle> processAll(List<TaskHandle> tasks, TaskProcessor processor)
+      throws InterruptedException {
+    CompletionService<Boolean> completionService = new ExecutorCompletionService<>(executor);
+    Map<Future<Boolean>, String> taskNames = new HashMap<>();
+    // Latest handle of each task that is still running, by task name.
+    Map<String, TaskHandle> running = new HashMap<>();
+    for (TaskHandle task : tasks) {
+      running.put(task.getName(), task);
+      Future<Boolean> future =
+          completionService.submit(
+              () -> {
+                try {
+                  processor.process(task);
+                  return true;
+                } catch (Exception e) {
+                  log.log(
+                      Level.WARNING,
+                      "Task " + task.getName() + " failed and will be leased again",
+                      e);
+                  return false;
+                }
+              });
+      taskNames.put(future, task.getName());
+    }
+
+    List<TaskHandle> completed = new ArrayList<>();
+    // Extend leases once half of the lease period has passed.
+    long extendIntervalMillis = TimeUnit.SECONDS.toMillis(leaseSeconds) / 2;
+    long nextExtensionMillis = System.currentTimeMillis() + extendIntervalMillis;
+    int remaining = tasks.size();
+    while (remaining > 0) {
+      long waitMillis = Math.max(0, nextExtensionMillis - System.currentTimeMillis());
+      Future<Boolean> done = completionService.poll(waitMillis, TimeUnit.MILLISECONDS);
+      if (done != null) {
+        remaining--;
+        // Failed tasks are not returned, so they can be leased again once their lease expires.
+        TaskHandle task = running.remove(taskNames.get(done));
+        if (getUnchecked(done)) {
+          completed.add(task);
+        }
+      }
+      if (System.currentTimeMillis() >= nextExtensionMillis) {
+        extendLeases(running);
+        nextExtensionMillis = System.currentTimeMillis() + extendIntervalMillis;
+      }
+    }
+    return completed;
+  }
+
+  private static boolean getUnchecked(Future<Boolean> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private void extendLeases(Map<String, TaskHandle> running) {
+    for (Map.Entry<String, TaskHandle> entry : running.entrySet()) {
+      // The new lease runs from now, so slow tasks keep ownership while they are processed.
+      entry.setValue(queue.modifyTaskLease(entry.getValue(), leaseSeconds, TimeUnit.SECONDS));
+    }
+  }
+}
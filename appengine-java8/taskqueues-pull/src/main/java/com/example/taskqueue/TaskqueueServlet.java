@@ -16,12 +16,16 @@
 
 package com.example.taskqueue;
 
+import com.google.appengine.api.ThreadManager;
 import com.google.appengine.api.taskqueue.Queue;
 import com.google.appengine.api.taskqueue.QueueFactory;
 import com.google.appengine.api.taskqueue.TaskHandle;
 import com.google.appengine.api.taskqueue.TaskOptions;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import javax.servlet.ServletException;
@@ -45,6 +49,7 @@ public class TaskqueueServlet extends HttpServlet {
   private static final Logger log = Logger.getLogger(TaskqueueServlet.class.getName());
   private static final int numberOfTasksToAdd = 100;
   private static final int numberOfTasksToLease = 100;
+  private static final int numberOfProcessingThreads = 10;
   private static boolean useTaggedTasks = true;
   private static String output;
   private static String message;
@@ -66,21 +71,26 @@ public class TaskqueueServlet extends HttpServlet {
       Queue q = QueueFactory.getQueue("pull-queue");
       // [END get_queue]
       if (!useTaggedTasks) {
+        // [START add_task]
+        // Add the tasks with a single call rather than one call per task
+        List<TaskOptions> tasks = new ArrayList<>(numberOfTasksToAdd);
         for (int i = 0; i < numberOfTasksToAdd; i++) {
-          // [START add_task]
-          q.add(
+          tasks.add(
               TaskOptions.Builder.withMethod(TaskOptions.Method.PULL).payload(content.toString()));
-          // [END add_task]
         }
+        q.add(tasks);
+        // [END add_task]
       } else {
+        // [START add_task_w_tag]
+        List<TaskOptions> tasks = new ArrayList<>(numberOfTasksToAdd);
         for (int i = 0; i < numberOfTasksToAdd; i++) {
-          // [START add_task_w_tag]
-          q.add(
+          tasks.add(
               TaskOptions.Builder.withMethod(TaskOptions.Method.PULL)
                   .payload(content.toString())
                   .tag("process".getBytes()));
-          // [END add_task_w_tag]
         }
+        q.add(tasks);
+        // [END add_task_w_tag]
       }
       try {
         message = "Added " + numberOfTasksToAdd + " tasks to the task queue.";
@@ -120,25 +130,35 @@ public class TaskqueueServlet extends HttpServlet {
 
   //Method to process and delete tasks
   private static String processTasks(List<TaskHandle> tasks, Queue q) {
-    String payload;
-    int numberOfDeletedTasks = 0;
-    for (TaskHandle task : tasks) {
-      payload = new String(task.getPayload());
-      output =
-          String.format(
-              "Processing: taskName='%s'  payload='%s'",
-              task.getName().toString(), payload.toString());
-      log.info(output.toString());
-      output = String.format("Deleting taskName='%s'", task.getName().toString());
-      log.info(output.toString());
-      // [START delete_task]
-      q.deleteTask(task);
-      // [END delete_task]
-      numberOfDeletedTasks++;
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            numberOfProcessingThreads, ThreadManager.currentRequestThreadFactory());
+    List<TaskHandle> completed;
+    try {
+      PullQueueWorker worker = new PullQueueWorker(q, executor, 3600, numberOfTasksToLease);
+      completed =
+          worker.processAll(
+              tasks,
+              task -> {
+                String payload = new String(task.getPayload());
+                log.info(
+                    String.format(
+                        "Processing: taskName='%s'  payload='%s'", task.getName(), payload));
+              });
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return "Interrupted while processing tasks.";
+    } finally {
+      executor.shutdown();
     }
+    // Tasks that failed are not deleted, so they can be leased again
+    // [START delete_task]
+    q.deleteTask(completed);
+    // [END delete_task]
+    int numberOfDeletedTasks = completed.size();
     if (numberOfDeletedTasks > 0) {
       message =
-          "Processed and deleted " + numberOfTasksToLease + " tasks from the " + " task queue.";
+          "Processed and deleted " + numberOfDeletedTasks + " tasks from the " + " task queue.";
     } else {
       message = "Task Queue has no tasks available for lease.";
     }
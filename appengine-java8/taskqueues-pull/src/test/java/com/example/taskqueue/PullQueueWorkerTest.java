@@ -0,0 +1,136 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.taskqueue;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskHandle;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.appengine.api.taskqueue.dev.LocalTaskQueue;
+import com.google.appengine.api.taskqueue.dev.QueueStateInfo;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PullQueueWorkerTest {
+  private static final int NUMBER_OF_TASKS = 1000;
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(
+          new LocalTaskQueueTestConfig().setQueueXmlPath("src/main/webapp/WEB-INF/queue.xml"));
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    executor = Executors.newFixedThreadPool(10);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    helper.tearDown();
+  }
+
+  @Test
+  public void drain_processesAndDeletesAllTasks() throws Exception {
+    Queue q = QueueFactory.getQueue("pull-queue");
+    PullQueueWorker worker = new PullQueueWorker(q, executor, 60, 100);
+
+    List<TaskOptions> tasks = new ArrayList<>();
+    for (int i = 0; i < NUMBER_OF_TASKS; i++) {
+      tasks.add(
+          TaskOptions.Builder.withMethod(TaskOptions.Method.PULL)
+              .payload("payload" + i)
+              .tag("process"));
+    }
+    worker.addTasks(tasks);
+    LocalTaskQueue ltq = LocalTaskQueueTestConfig.getLocalTaskQueue();
+    QueueStateInfo qsi = ltq.getQueueStateInfo().get(q.getQueueName());
+    assertEquals(NUMBER_OF_TASKS, qsi.getTaskInfo().size());
+
+    AtomicInteger processed = new AtomicInteger();
+    int deleted = worker.drain("process", task -> processed.incrementAndGet());
+
+    assertEquals(NUMBER_OF_TASKS, processed.get());
+    assertEquals(NUMBER_OF_TASKS, deleted);
+    qsi = ltq.getQueueStateInfo().get(q.getQueueName());
+    assertEquals(0, qsi.getTaskInfo().size());
+  }
+
+  @Test
+  public void drain_leavesFailedTasksInQueue() throws Exception {
+    Queue q = QueueFactory.getQueue("pull-queue");
+    PullQueueWorker worker = new PullQueueWorker(q, executor, 60, 100);
+
+    List<TaskOptions> tasks = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      tasks.add(TaskOptions.Builder.withMethod(TaskOptions.Method.PULL).payload("" + i));
+    }
+    worker.addTasks(tasks);
+
+    int deleted =
+        worker.drain(
+            null,
+            task -> {
+              if (new String(task.getPayload()).equals("3")) {
+                throw new IllegalStateException("failed");
+              }
+            });
+
+    assertEquals(9, deleted);
+    LocalTaskQueue ltq = LocalTaskQueueTestConfig.getLocalTaskQueue();
+    QueueStateInfo qsi = ltq.getQueueStateInfo().get(q.getQueueName());
+    assertEquals(1, qsi.getTaskInfo().size());
+  }
+
+  @Test
+  public void processAll_returnsCompletedTasksWithoutDeletingThem() throws Exception {
+    Queue q = QueueFactory.getQueue("pull-queue");
+    PullQueueWorker worker = new PullQueueWorker(q, executor, 60, 100);
+
+    List<TaskOptions> tasks = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      tasks.add(TaskOptions.Builder.withMethod(TaskOptions.Method.PULL).payload("" + i));
+    }
+    worker.addTasks(tasks);
+
+    List<TaskHandle> completed =
+        worker.processAll(
+            q.leaseTasks(60, TimeUnit.SECONDS, 100),
+            task -> {
+              if (new String(task.getPayload()).equals("3")) {
+                throw new IllegalStateException("failed");
+              }
+            });
+
+    assertEquals(9, completed.size());
+    LocalTaskQueue ltq = LocalTaskQueueTestConfig.getLocalTaskQueue();
+    QueueStateInfo qsi = ltq.getQueueStateInfo().get(q.getQueueName());
+    assertEquals(10, qsi.getTaskInfo().size());
+  }
+}
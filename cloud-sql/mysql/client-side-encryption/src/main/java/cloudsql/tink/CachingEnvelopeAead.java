@@ -0,0 +1,237 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cloudsql.tink;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.Registry;
+import com.google.crypto.tink.proto.KeyTemplate;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An envelope AEAD that reuses each data encryption key (DEK) for many rows.
+ *
+ * <p>{@link com.google.crypto.tink.aead.KmsEnvelopeAead} generates a DEK and wraps it with the
+ * remote (KMS) key for every encryption, and unwraps it again for every decryption, so each row
+ * costs one KMS call. This class keeps the current DEK in memory and only generates and wraps a new
+ * one after {@code maxRowsPerDek} encryptions or once the DEK is older than {@code maxDekAge}.
+ *
+ * <p>Ciphertexts use the same format as KmsEnvelopeAead: the length of the wrapped DEK, the
+ * wrapped DEK, then the payload encrypted with the DEK. The wrapped DEK identifies the key a row
+ * was encrypted with, so rows written by either class can be decrypted by either class, and rows
+ * that share a DEK need only one KMS call to decrypt when read with {@link #decryptAll}.
+ */
+public class CachingEnvelopeAead implements Aead {
+
+  private static final byte[] EMPTY_ASSOCIATED_DATA = new byte[0];
+  private static final int LENGTH_ENCRYPTED_DEK = 4;
+  // Runs the KMS calls that unwrap DEKs in decryptAll. They block on the network, so they get
+  // their own threads rather than the common ForkJoinPool.
+  private static final ExecutorService UNWRAP_EXECUTOR =
+      Executors.newFixedThreadPool(
+          8,
+          runnable -> {
+            Thread thread = new Thread(runnable, "dek-unwrap");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private static class Dek {
+    private final byte[] wrapped;
+    private final Aead aead;
+    private final Instant expiry;
+    private long uses;
+
+    Dek(byte[] wrapped, Aead aead, Instant expiry) {
+      this.wrapped = wrapped;
+      this.aead = aead;
+      this.expiry = expiry;
+    }
+  }
+
+  private final KeyTemplate dekTemplate;
+  private final Aead remote;
+  private final long maxRowsPerDek;
+  private final Duration maxDekAge;
+  private final Clock clock;
+  private Dek current;
+
+  /**
+   * Creates a caching envelope AEAD.
+   *
+   * @param dekTemplate template of the data encryption keys, e.g. AeadKeyTemplates.AES128_GCM
+   * @param remote the key encryption key, usually a Cloud KMS key
+   * @param maxRowsPerDek number of encryptions after which a new DEK is generated
+   * @param maxDekAge time after which a new DEK is generated
+   */
+  public CachingEnvelopeAead(
+      KeyTemplate dekTemplate, Aead remote, long maxRowsPerDek, Duration maxDekAge) {
+    this(dekTemplate, remote, maxRowsPerDek, maxDekAge, Clock.systemUTC());
+  }
+
+  CachingEnvelopeAead(
+      KeyTemplate dekTemplate, Aead remote, long maxRowsPerDek, Duration maxDekAge, Clock clock) {
+    this.dekTemplate = dekTemplate;
+    this.remote = remote;
+    this.maxRowsPerDek = maxRowsPerDek;
+    this.maxDekAge = maxDekAge;
+    this.clock = clock;
+  }
+
+  @Override
+  public byte[] encrypt(byte[] plaintext, byte[] associatedData) throws GeneralSecurityException {
+    Dek dek = acquireDek();
+    byte[] payload = dek.aead.encrypt(plaintext, associatedData);
+    return ByteBuffer.allocate(LENGTH_ENCRYPTED_DEK + dek.wrapped.length + payload.length)
+        .putInt(dek.wrapped.length)
+        .put(dek.wrapped)
+        .put(payload)
+        .array();
+  }
+
+  @Override
+  public byte[] decrypt(byte[] ciphertext, byte[] associatedData)
+      throws GeneralSecurityException {
+    byte[] wrapped = wrappedDek(ciphertext);
+    Dek dek = currentDek();
+    Aead aead = dek != null && Arrays.equals(dek.wrapped, wrapped) ? dek.aead : unwrap(wrapped);
+    return aead.decrypt(payload(ciphertext, wrapped), associatedData);
+  }
+
+  /**
+   * Decrypts a batch of ciphertexts, such as the rows of a query result. Each distinct DEK is
+   * unwrapped once, with the unwraps of different DEKs running in parallel, and the unwrapped keys
+   * are dropped when the call returns.
+   *
+   * @param aead the AEAD the ciphertexts were encrypted with
+   * @param ciphertexts the ciphertexts to decrypt
+   * @param associatedData the associated data of each ciphertext
+   * @return the plaintexts, in the same order as the ciphertexts
+   */
+  public static List<byte[]> decryptAll(
+      Aead aead, List<byte[]> ciphertexts, List<byte[]> associatedData)
+      throws GeneralSecurityException {
+    if (ciphertexts.size() != associatedData.size()) {
+      throw new IllegalArgumentException("Each ciphertext needs its associated data.");
+    }
+    List<byte[]> plaintexts = new ArrayList<>(ciphertexts.size());
+    if (!(aead instanceof CachingEnvelopeAead)) {
+      for (int i = 0; i < ciphertexts.size(); i++) {
+        plaintexts.add(aead.decrypt(ciphertexts.get(i), associatedData.get(i)));
+      }
+      return plaintexts;
+    }
+    CachingEnvelopeAead envelope = (CachingEnvelopeAead) aead;
+
+    // Start unwrapping every distinct DEK first, keyed by the wrapped DEK. The map only holds
+    // futures, so no KMS call runs while the map is being updated.
+    Map<ByteBuffer, CompletableFuture<Aead>> deks = new HashMap<>();
+    List<byte[]> wrappedDeks = new ArrayList<>(ciphertexts.size());
+    for (byte[] ciphertext : ciphertexts) {
+      byte[] wrapped = wrappedDek(ciphertext);
+      wrappedDeks.add(wrapped);
+      deks.computeIfAbsent(
+          ByteBuffer.wrap(wrapped),
+          key ->
+              CompletableFuture.supplyAsync(
+                  () -> {
+                    try {
+                      return envelope.unwrap(wrapped);
+                    } catch (GeneralSecurityException e) {
+                      throw new DecryptionFailure(e);
+                    }
+                  },
+                  UNWRAP_EXECUTOR));
+    }
+
+    // Decrypting with an unwrapped DEK is local and fast, so it runs on this thread.
+    for (int i = 0; i < ciphertexts.size(); i++) {
+      byte[] wrapped = wrappedDeks.get(i);
+      Aead dek = join(deks.get(ByteBuffer.wrap(wrapped)));
+      plaintexts.add(dek.decrypt(payload(ciphertexts.get(i), wrapped), associatedData.get(i)));
+    }
+    return plaintexts;
+  }
+
+  private static Aead join(CompletableFuture<Aead> dek) throws GeneralSecurityException {
+    try {
+      return dek.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof DecryptionFailure) {
+        throw (GeneralSecurityException) e.getCause().getCause();
+      }
+      throw e;
+    }
+  }
+
+  private synchronized Dek currentDek() {
+    return current;
+  }
+
+  private synchronized Dek acquireDek() throws GeneralSecurityException {
+    Instant now = clock.instant();
+    if (current == null || current.uses >= maxRowsPerDek || !now.isBefore(current.expiry)) {
+      byte[] dek = Registry.newKey(dekTemplate).toByteArray();
+      byte[] wrapped = remote.encrypt(dek, EMPTY_ASSOCIATED_DATA);
+      Aead aead = Registry.getPrimitive(dekTemplate.getTypeUrl(), dek, Aead.class);
+      current = new Dek(wrapped, aead, now.plus(maxDekAge));
+    }
+    current.uses++;
+    return current;
+  }
+
+  private Aead unwrap(byte[] wrapped) throws GeneralSecurityException {
+    byte[] dek = remote.decrypt(wrapped, EMPTY_ASSOCIATED_DATA);
+    return Registry.getPrimitive(dekTemplate.getTypeUrl(), dek, Aead.class);
+  }
+
+  private static byte[] wrappedDek(byte[] ciphertext) throws GeneralSecurityException {
+    if (ciphertext.length < LENGTH_ENCRYPTED_DEK) {
+      throw new GeneralSecurityException("invalid ciphertext");
+    }
+    int wrappedLength = ByteBuffer.wrap(ciphertext).getInt();
+    if (wrappedLength <= 0 || wrappedLength > ciphertext.length - LENGTH_ENCRYPTED_DEK) {
+      throw new GeneralSecurityException("invalid ciphertext");
+    }
+    return Arrays.copyOfRange(
+        ciphertext, LENGTH_ENCRYPTED_DEK, LENGTH_ENCRYPTED_DEK + wrappedLength);
+  }
+
+  private static byte[] payload(byte[] ciphertext, byte[] wrapped) {
+    return Arrays.copyOfRange(
+        ciphertext, LENGTH_ENCRYPTED_DEK + wrapped.length, ciphertext.length);
+  }
+
+  // Carries a GeneralSecurityException out of a lambda.
+  private static class DecryptionFailure extends RuntimeException {
+    DecryptionFailure(GeneralSecurityException cause) {
+      super(cause);
+    }
+  }
+}
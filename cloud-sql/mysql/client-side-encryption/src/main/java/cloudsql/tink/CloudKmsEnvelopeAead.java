@@ -25,6 +25,7 @@ import com.google.crypto.tink.aead.AeadKeyTemplates;
 import com.google.crypto.tink.aead.KmsEnvelopeAead;
 import com.google.crypto.tink.integration.gcpkms.GcpKmsClient;
 import java.security.GeneralSecurityException;
+import java.time.Duration;
 
 public class CloudKmsEnvelopeAead {
 
@@ -42,5 +43,17 @@ public class CloudKmsEnvelopeAead {
     // of data.
     return new KmsEnvelopeAead(AeadKeyTemplates.AES128_GCM, gcpAead);
   }
+
+  public static Aead getCaching(String kmsUri, long maxRowsPerDek, Duration maxDekAge)
+      throws GeneralSecurityException {
+    AeadConfig.register();
+
+    KmsClient client = new GcpKmsClient().withDefaultCredentials();
+    Aead gcpAead = client.getAead(kmsUri);
+
+    // Create an envelope AEAD primitive that reuses each data encryption key for up to
+    // maxRowsPerDek rows or maxDekAge, instead of calling Cloud KMS for every row.
+    return new CachingEnvelopeAead(AeadKeyTemplates.AES128_GCM, gcpAead, maxRowsPerDek, maxDekAge);
+  }
 }
 // [END cloud_sql_mysql_cse_key]
\ No newline at end of file
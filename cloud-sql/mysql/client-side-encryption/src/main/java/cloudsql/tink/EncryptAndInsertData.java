@@ -24,7 +24,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.util.Date;
+import java.util.List;
 import javax.sql.DataSource;
 
 public class EncryptAndInsertData {
@@ -52,9 +54,9 @@ public class EncryptAndInsertData {
         CloudSqlConnectionPool.createConnectionPool(dbUser, dbPass, dbName, cloudSqlConnectionName);
     CloudSqlConnectionPool.createTable(pool, tableName);
 
-    // Initialize envelope AEAD
+    // Initialize envelope AEAD, reusing each data encryption key for up to 10,000 rows or an hour
     // See CloudKmsEnvelopeAead.java for setup details
-    Aead envAead = CloudKmsEnvelopeAead.get(kmsUri);
+    Aead envAead = CloudKmsEnvelopeAead.getCaching(kmsUri, 10000, Duration.ofHours(1));
 
     encryptAndInsertData(pool, envAead, tableName, team, email);
   }
@@ -83,5 +85,32 @@ public class EncryptAndInsertData {
       }
     }
   }
+
+  public static void encryptAndInsertData(
+      DataSource pool, Aead envAead, String tableName, String team, List<String> emails)
+      throws GeneralSecurityException, SQLException {
+
+    try (Connection conn = pool.getConnection()) {
+      String stmt =
+          String.format(
+              "INSERT INTO %s (team, time_cast, voter_email) VALUES (?, ?, ?);", tableName);
+      try (PreparedStatement voteStmt = conn.prepareStatement(stmt); ) {
+        Timestamp timeCast = new Timestamp(new Date().getTime());
+        for (String email : emails) {
+          voteStmt.setString(1, team);
+          voteStmt.setTimestamp(2, timeCast);
+          // With a CachingEnvelopeAead, rows share a data encryption key, so encrypting the whole
+          // batch needs at most a few Cloud KMS calls.
+          voteStmt.setBytes(3, envAead.encrypt(email.getBytes(), team.getBytes()));
+          voteStmt.addBatch();
+        }
+
+        // Insert all rows in one round trip.
+        voteStmt.executeBatch();
+        System.out.println(
+            String.format("Successfully inserted %d rows into table %s", emails.size(), tableName));
+      }
+    }
+  }
 }
 // [END cloud_sql_mysql_cse_insert]
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cloudsql.tink;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.aead.AeadConfig;
+import com.google.crypto.tink.aead.AeadKeyTemplates;
+import com.google.crypto.tink.aead.KmsEnvelopeAead;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingEnvelopeAeadTest {
+
+  // Stands in for the Cloud KMS key, counting how often it is called.
+  private static class FakeKms implements Aead {
+    private final Aead key;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    FakeKms() throws GeneralSecurityException {
+      key = KeysetHandle.generateNew(AeadKeyTemplates.AES128_GCM).getPrimitive(Aead.class);
+    }
+
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] associatedData)
+        throws GeneralSecurityException {
+      calls.incrementAndGet();
+      return key.encrypt(plaintext, associatedData);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] associatedData)
+        throws GeneralSecurityException {
+      calls.incrementAndGet();
+      return key.decrypt(ciphertext, associatedData);
+    }
+  }
+
+  private FakeKms kms;
+
+  @Before
+  public void setUp() throws GeneralSecurityException {
+    AeadConfig.register();
+    kms = new FakeKms();
+  }
+
+  @Test
+  public void encryptAndDecryptAll_unwrapEachDekOnce() throws GeneralSecurityException {
+    CachingEnvelopeAead aead =
+        new CachingEnvelopeAead(AeadKeyTemplates.AES128_GCM, kms, 100, Duration.ofHours(1));
+    List<byte[]> ciphertexts = new ArrayList<>();
+    List<byte[]> associatedData = new ArrayList<>();
+    for (int i = 0; i < 250; i++) {
+      ciphertexts.add(aead.encrypt(("voter" + i + "@example.com").getBytes(), "TABS".getBytes()));
+      associatedData.add("TABS".getBytes());
+    }
+    // 250 rows with 100 rows per key need 3 keys.
+    assertThat(kms.calls.get()).isEqualTo(3);
+
+    List<byte[]> plaintexts =
+        CachingEnvelopeAead.decryptAll(
+            new CachingEnvelopeAead(AeadKeyTemplates.AES128_GCM, kms, 100, Duration.ofHours(1)),
+            ciphertexts,
+            associatedData);
+
+    assertThat(kms.calls.get()).isEqualTo(6);
+    for (int i = 0; i < plaintexts.size(); i++) {
+      assertThat(new String(plaintexts.get(i))).isEqualTo("voter" + i + "@example.com");
+    }
+  }
+
+  @Test
+  public void decryptAll_unwrapFailureThrows() throws GeneralSecurityException {
+    CachingEnvelopeAead aead =
+        new CachingEnvelopeAead(AeadKeyTemplates.AES128_GCM, kms, 100, Duration.ofHours(1));
+    byte[] ciphertext = aead.encrypt("hello@example.com".getBytes(), "TABS".getBytes());
+    // Corrupt the wrapped DEK, which starts after its 4-byte length.
+    ciphertext[4] ^= 1;
+
+    try {
+      CachingEnvelopeAead.decryptAll(
+          aead,
+          Collections.singletonList(ciphertext),
+          Collections.singletonList("TABS".getBytes()));
+      fail("Expected GeneralSecurityException");
+    } catch (GeneralSecurityException expected) {
+      // The KMS error is thrown by decryptAll itself.
+    }
+  }
+
+  @Test
+  public void decryptAll_otherAeads() throws GeneralSecurityException {
+    Aead envelope = new KmsEnvelopeAead(AeadKeyTemplates.AES128_GCM, kms);
+    byte[] ciphertext = envelope.encrypt("hello@example.com".getBytes(), "TABS".getBytes());
+
+    List<byte[]> plaintexts =
+        CachingEnvelopeAead.decryptAll(
+            envelope,
+            Collections.singletonList(ciphertext),
+            Collections.singletonList("TABS".getBytes()));
+
+    assertThat(new String(plaintexts.get(0))).isEqualTo("hello@example.com");
+  }
+
+  @Test
+  public void ciphertextFormat_compatibleWithKmsEnvelopeAead() throws GeneralSecurityException {
+    Aead envelope = new KmsEnvelopeAead(AeadKeyTemplates.AES128_GCM, kms);
+    CachingEnvelopeAead caching =
+        new CachingEnvelopeAead(AeadKeyTemplates.AES128_GCM, kms, 100, Duration.ofHours(1));
+
+    byte[] fromEnvelope = envelope.encrypt("hello@example.com".getBytes(), "TABS".getBytes());
+    byte[] fromCaching = caching.encrypt("hello@example.com".getBytes(), "TABS".getBytes());
+
+    assertThat(new String(caching.decrypt(fromEnvelope, "TABS".getBytes())))
+        .isEqualTo("hello@example.com");
+    assertThat(new String(envelope.decrypt(fromCaching, "TABS".getBytes())))
+        .isEqualTo("hello@example.com");
+  }
+
+  @Test(expected = GeneralSecurityException.class)
+  public void decrypt_wrongAssociatedDataFails() throws GeneralSecurityException {
+    CachingEnvelopeAead aead =
+        new CachingEnvelopeAead(AeadKeyTemplates.AES128_GCM, kms, 100, Duration.ofHours(1));
+    byte[] ciphertext = aead.encrypt("hello@example.com".getBytes(), "TABS".getBytes());
+
+    aead.decrypt(ciphertext, "SPACES".getBytes());
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudsql;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+@SuppressFBWarnings(
+    value = {"SE_NO_SERIALVERSIONID"},
+    justification = "Not needed for MetricsServlet")
+@WebServlet(name = "Metrics", value = "/metrics")
+public class MetricsServlet extends HttpServlet {
+
+  @Override
+  public void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    resp.setContentType("text/plain; version=0.0.4");
+    PrintWriter out = resp.getWriter();
+
+    Object pool = req.getServletContext().getAttribute("my-pool");
+    if (pool instanceof HikariDataSource) {
+      HikariDataSource hikari = (HikariDataSource) pool;
+      HikariPoolMXBean poolBean = hikari.getHikariPoolMXBean();
+      if (poolBean != null) {
+        writeGauge(out, "hikari_connections_active", poolBean.getActiveConnections());
+        writeGauge(out, "hikari_connections_idle", poolBean.getIdleConnections());
+        writeGauge(out, "hikari_connections_total", poolBean.getTotalConnections());
+        writeGauge(out, "hikari_connections_pending", poolBean.getThreadsAwaitingConnection());
+      }
+      writeGauge(
+          out, "hikari_connections_max", hikari.getHikariConfigMXBean().getMaximumPoolSize());
+    }
+
+    PoolMetrics metrics = (PoolMetrics) req.getServletContext().getAttribute("pool-metrics");
+    if (metrics != null) {
+      metrics.write(out);
+    }
+  }
+
+  private static void writeGauge(PrintWriter out, String name, int value) {
+    out.printf("# TYPE %s gauge%n", name);
+    out.printf("%s %d%n", name, value);
+  }
+}
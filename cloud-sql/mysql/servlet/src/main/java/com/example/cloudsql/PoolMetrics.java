@@ -0,0 +1,122 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudsql;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects histograms of connection wait, usage and creation times from a Hikari pool, and writes
+ * them in the Prometheus text format.
+ *
+ * <p>Register it with {@link com.zaxxer.hikari.HikariConfig#setMetricsTrackerFactory} before the
+ * pool is created.
+ */
+public class PoolMetrics implements MetricsTrackerFactory, IMetricsTracker {
+
+  // Upper bounds of the histogram buckets, in milliseconds.
+  private static final double[] BUCKETS_MILLIS = {
+    0.1, 0.5, 1, 5, 10, 50, 100, 500, 1000, 5000, 10000
+  };
+
+  private static class Histogram {
+    private final String name;
+    private final String help;
+    private final LongAdder[] counts = new LongAdder[BUCKETS_MILLIS.length + 1];
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(String name, String help) {
+      this.name = name;
+      this.help = help;
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = new LongAdder();
+      }
+    }
+
+    void record(double millis) {
+      int bucket = 0;
+      while (bucket < BUCKETS_MILLIS.length && millis > BUCKETS_MILLIS[bucket]) {
+        bucket++;
+      }
+      counts[bucket].increment();
+      sum.add(millis);
+    }
+
+    void write(PrintWriter out) {
+      out.printf("# HELP %s %s%n", name, help);
+      out.printf("# TYPE %s histogram%n", name);
+      // Prometheus buckets are cumulative.
+      long cumulative = 0;
+      for (int i = 0; i < BUCKETS_MILLIS.length; i++) {
+        cumulative += counts[i].sum();
+        out.printf("%s_bucket{le=\"%s\"} %d%n", name, BUCKETS_MILLIS[i], cumulative);
+      }
+      cumulative += counts[BUCKETS_MILLIS.length].sum();
+      out.printf("%s_bucket{le=\"+Inf\"} %d%n", name, cumulative);
+      out.printf("%s_sum %s%n", name, sum.sum());
+      out.printf("%s_count %d%n", name, cumulative);
+    }
+  }
+
+  private final Histogram waitTime =
+      new Histogram("hikari_connection_wait_ms", "Time spent waiting for a connection checkout.");
+  private final Histogram usageTime =
+      new Histogram("hikari_connection_usage_ms", "Time a connection was held before release.");
+  private final Histogram creationTime =
+      new Histogram("hikari_connection_creation_ms", "Time taken to open a new connection.");
+  private final LongAdder timeouts = new LongAdder();
+
+  @Override
+  public IMetricsTracker create(String poolName, PoolStats poolStats) {
+    return this;
+  }
+
+  @Override
+  public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+    waitTime.record(elapsedAcquiredNanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  @Override
+  public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+    usageTime.record(elapsedBorrowedMillis);
+  }
+
+  @Override
+  public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+    creationTime.record(connectionCreatedMillis);
+  }
+
+  @Override
+  public void recordConnectionTimeout() {
+    timeouts.increment();
+  }
+
+  /** Writes the histograms and the timeout count. */
+  public void write(PrintWriter out) {
+    waitTime.write(out);
+    usageTime.write(out);
+    creationTime.write(out);
+    out.println("# HELP hikari_connection_timeout_total Connection checkouts that timed out.");
+    out.println("# TYPE hikari_connection_timeout_total counter");
+    out.printf("hikari_connection_timeout_total %d%n", timeouts.sum());
+  }
+}
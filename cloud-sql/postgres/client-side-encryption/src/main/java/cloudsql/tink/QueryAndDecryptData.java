@@ -25,6 +25,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import javax.sql.DataSource;
 
 public class QueryAndDecryptData {
@@ -50,9 +53,9 @@ public class QueryAndDecryptData {
         CloudSqlConnectionPool.createConnectionPool(dbUser, dbPass, dbName, cloudSqlConnectionName);
     CloudSqlConnectionPool.createTable(pool, tableName);
 
-    // Initialize envelope AEAD
+    // Initialize envelope AEAD, reusing each data encryption key for up to 10,000 rows or an hour
     // See CloudKmsEnvelopeAead.java for setup details
-    Aead envAead = CloudKmsEnvelopeAead.get(kmsUri);
+    Aead envAead = CloudKmsEnvelopeAead.getCaching(kmsUri, 10000, Duration.ofHours(1));
 
     // Insert row into table to test
     // See EncryptAndInsert.java for setup details
@@ -73,21 +76,34 @@ public class QueryAndDecryptData {
       try (PreparedStatement voteStmt = conn.prepareStatement(stmt); ) {
         ResultSet voteResults = voteStmt.executeQuery();
 
-        System.out.println("Team\tTime Cast\tEmail");
+        List<String> teams = new ArrayList<>();
+        List<Timestamp> timesCast = new ArrayList<>();
+        List<byte[]> encryptedEmails = new ArrayList<>();
+        List<byte[]> associatedData = new ArrayList<>();
         while (voteResults.next()) {
-          String team = voteResults.getString(1);
-          Timestamp timeCast = voteResults.getTimestamp(2);
+          teams.add(voteResults.getString(1));
+          timesCast.add(voteResults.getTimestamp(2));
+          encryptedEmails.add(voteResults.getBytes(3));
 
           // Postgres pads char VARCHAR fields with spaces. These will need to be removed before
           // decrypting.
           String aad = voteResults.getString(1).trim();
 
-          // Use the envelope AEAD primitive to encrypt the email, using the team name as
-          // associated data. This binds the encryption of the email to the team name, preventing
-          // associating an encrypted email in one row with a team name in another row.
-          String email = new String(envAead.decrypt(voteResults.getBytes(3), aad.getBytes()));
+          // The team name was used as associated data when encrypting the email. This binds the
+          // encryption of the email to the team name, preventing associating an encrypted email
+          // in one row with a team name in another row.
+          associatedData.add(aad.getBytes());
+        }
+
+        // Decrypt the emails in parallel. Rows that share a data encryption key need only one
+        // Cloud KMS call to unwrap it.
+        List<byte[]> emails =
+            CachingEnvelopeAead.decryptAll(envAead, encryptedEmails, associatedData);
 
-          System.out.println(String.format("%s\t%s\t%s", team, timeCast, email));
+        System.out.println("Team\tTime Cast\tEmail");
+        for (int i = 0; i < teams.size(); i++) {
+          String email = new String(emails.get(i));
+          System.out.println(String.format("%s\t%s\t%s", teams.get(i), timesCast.get(i), email));
         }
       }
     }
@@ -27,6 +27,9 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
@@ -57,8 +60,18 @@ public class IndexServlet extends HttpServlet {
   }
 
   private static final Logger LOGGER = Logger.getLogger(IndexServlet.class.getName());
+  private static final long VOTE_TIMEOUT_SECONDS = 10;
 
   public TemplateData getTemplateData(DataSource pool) throws ServletException {
+    return getTemplateData(pool, null);
+  }
+
+  /**
+   * Loads the data for the page. Vote counts are read from the tally when one is given, and
+   * counted from the votes table otherwise.
+   */
+  public TemplateData getTemplateData(DataSource pool, @Nullable VoteTally tally)
+      throws ServletException {
 
     int tabCount = 0;
     int spaceCount = 0;
@@ -78,6 +91,12 @@ public class IndexServlet extends HttpServlet {
         }
       }
 
+      if (tally != null) {
+        tabCount = (int) tally.getCount("TABS");
+        spaceCount = (int) tally.getCount("SPACES");
+        return new TemplateData(tabCount, spaceCount, recentVotes);
+      }
+
       // PreparedStatements can also be executed multiple times with different arguments. This can
       // improve efficiency, and project a query from being vulnerable to an SQL injection.
       String stmt2 = "SELECT COUNT(vote_id) FROM votes WHERE candidate=?";
@@ -114,8 +133,9 @@ public class IndexServlet extends HttpServlet {
     // Extract the pool from the Servlet Context, reusing the one that was created
     // in the ContextListener when the application was started
     DataSource pool = (DataSource) req.getServletContext().getAttribute("my-pool");
+    VoteTally tally = (VoteTally) req.getServletContext().getAttribute("vote-tally");
 
-    TemplateData templateData = getTemplateData(pool);
+    TemplateData templateData = getTemplateData(pool, tally);
 
     // Add variables and render the page
     req.setAttribute("tabCount", templateData.tabCount);
@@ -154,10 +174,39 @@ public class IndexServlet extends HttpServlet {
 
     // Reuse the pool that was created in the ContextListener when the Servlet started.
     DataSource pool = (DataSource) req.getServletContext().getAttribute("my-pool");
+    VoteTally tally = (VoteTally) req.getServletContext().getAttribute("vote-tally");
+    VoteWriter writer = (VoteWriter) req.getServletContext().getAttribute("vote-writer");
+    if (writer != null) {
+      // Queue the vote to be inserted together with votes from concurrent requests, and wait for
+      // the batch containing it to commit.
+      try {
+        writer.submit(now, team).get(VOTE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      } catch (ExecutionException | TimeoutException ex) {
+        LOGGER.log(Level.WARNING, "Error while attempting to submit vote.", ex);
+        resp.setStatus(500);
+        resp.getWriter()
+            .write(
+                "Unable to successfully cast vote! Please check the application "
+                    + "logs for more details.");
+        return;
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        resp.setStatus(503);
+        return;
+      }
+      resp.setStatus(200);
+      resp.getWriter().printf("Vote successfully cast for '%s' at time %s!%n", team, now);
+      return;
+    }
     // [START cloud_sql_postgres_servlet_connection]
     // Using a try-with-resources statement ensures that the connection is always released back
     // into the pool at the end of the statement (even if an error occurs)
     try (Connection conn = pool.getConnection()) {
+      // [START_EXCLUDE]
+      if (tally != null) {
+        conn.setAutoCommit(false);
+      }
+      // [END_EXCLUDE]
 
       // PreparedStatements can be more efficient and project against injections.
       String stmt = "INSERT INTO votes (time_cast, candidate) VALUES (?, ?);";
@@ -168,6 +217,14 @@ public class IndexServlet extends HttpServlet {
         // Finally, execute the statement. If it fails, an error will be thrown.
         voteStmt.execute();
       }
+      // [START_EXCLUDE]
+      if (tally != null) {
+        // Update the tally in the same transaction, so it never counts a vote that was not stored.
+        tally.recordVote(conn, team);
+        conn.commit();
+        tally.voteCommitted(team);
+      }
+      // [END_EXCLUDE]
     } catch (SQLException ex) {
       // If something goes wrong, handle the error in this section. This might involve retrying or
       // adjusting parameters depending on the situation.
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudsql;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resizes a Hikari pool between a lower and an upper bound, based on how many requests are waiting
+ * for a connection and how many connections are in use.
+ *
+ * <p>Run it periodically. The pool grows as soon as requests queue for a connection, and shrinks
+ * by one connection at a time once fewer than half of its connections have been in use for
+ * several consecutive samples. Idle connections above the pool's minimumIdle are closed by Hikari
+ * after its idleTimeout.
+ */
+public class PoolSizer implements Runnable {
+
+  private static final Logger LOGGER = Logger.getLogger(PoolSizer.class.getName());
+
+  private final HikariDataSource pool;
+  private final int minSize;
+  private final int maxSize;
+  private final int shrinkAfterSamples;
+  private int quietSamples;
+
+  /**
+   * Creates a sizer.
+   *
+   * @param pool the pool to resize
+   * @param minSize the smallest maximumPoolSize to set
+   * @param maxSize the largest maximumPoolSize to set
+   * @param shrinkAfterSamples number of consecutive lightly used samples before shrinking
+   */
+  public PoolSizer(HikariDataSource pool, int minSize, int maxSize, int shrinkAfterSamples) {
+    this.pool = pool;
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    this.shrinkAfterSamples = shrinkAfterSamples;
+  }
+
+  @Override
+  public void run() {
+    // An exception thrown from here would cancel any further scheduled runs.
+    try {
+      resize();
+    } catch (RuntimeException ex) {
+      LOGGER.log(Level.WARNING, "Error while attempting to resize the connection pool.", ex);
+    }
+  }
+
+  private void resize() {
+    HikariPoolMXBean poolBean = pool.getHikariPoolMXBean();
+    if (poolBean == null) {
+      // The pool has not been started yet.
+      return;
+    }
+    HikariConfigMXBean configBean = pool.getHikariConfigMXBean();
+    int current = configBean.getMaximumPoolSize();
+    int waiting = poolBean.getThreadsAwaitingConnection();
+    int active = poolBean.getActiveConnections();
+
+    int target = current;
+    if (waiting > 0) {
+      quietSamples = 0;
+      target = Math.min(maxSize, current + waiting);
+    } else if (active < current / 2) {
+      quietSamples++;
+      if (quietSamples >= shrinkAfterSamples) {
+        quietSamples = 0;
+        target = Math.max(minSize, current - 1);
+      }
+    } else {
+      quietSamples = 0;
+    }
+
+    if (target != current) {
+      LOGGER.info(
+          String.format(
+              "Resizing connection pool from %d to %d (%d active, %d waiting).",
+              current, target, active, waiting));
+      configBean.setMaximumPoolSize(target);
+    }
+  }
+}
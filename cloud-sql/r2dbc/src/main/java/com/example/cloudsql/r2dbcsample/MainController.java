@@ -17,6 +17,7 @@
 package com.example.cloudsql.r2dbcsample;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -29,14 +30,22 @@ public class MainController {
   @Autowired
   private VoteRepository voteRepository;
 
+  @Autowired
+  private VoteTally voteTally;
+
+  @Value("${votes.pageSize:100}")
+  private int pageSize;
+
   @RequestMapping("/")
   public String index(final Model model) {
+    // Request votes from the database a page at a time, and render them as they arrive.
     IReactiveDataDriverContextVariable votes =
-        new ReactiveDataDriverContextVariable(voteRepository.findAll(), 1);
+        new ReactiveDataDriverContextVariable(
+            voteRepository.findAll().limitRate(pageSize), pageSize);
     model.addAttribute("votes", votes);
 
-    model.addAttribute("tabCount", voteRepository.countWhereCandidateEquals("TABS"));
-    model.addAttribute("spaceCount", voteRepository.countWhereCandidateEquals("SPACES"));
+    model.addAttribute("tabCount", voteTally.getCount("TABS"));
+    model.addAttribute("spaceCount", voteTally.getCount("SPACES"));
 
     return "index";
   }
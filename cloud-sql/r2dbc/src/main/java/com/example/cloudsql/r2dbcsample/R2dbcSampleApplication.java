@@ -37,6 +37,21 @@ public class R2dbcSampleApplication extends AbstractR2dbcConfiguration {
   @Value("${connectionString}")
   private String connectionString;
 
+  @Value("${pool.initialSize:5}")
+  private int poolInitialSize;
+
+  @Value("${pool.maxSize:20}")
+  private int poolMaxSize;
+
+  @Value("${pool.maxIdleTime:30m}")
+  private Duration poolMaxIdleTime;
+
+  @Value("${pool.maxLifeTime:30m}")
+  private Duration poolMaxLifeTime;
+
+  @Value("${pool.maxAcquireTime:10s}")
+  private Duration poolMaxAcquireTime;
+
   public static void main(String[] args) {
     SpringApplication.run(R2dbcSampleApplication.class, args);
   }
@@ -49,8 +64,13 @@ public class R2dbcSampleApplication extends AbstractR2dbcConfiguration {
     ConnectionFactory connectionFactory = ConnectionFactories.get(connectionString);
     ConnectionPoolConfiguration configuration = ConnectionPoolConfiguration
         .builder(connectionFactory)
-        .maxIdleTime(Duration.ofMillis(1000))
-        .maxSize(20)
+        .initialSize(poolInitialSize)
+        .maxSize(poolMaxSize)
+        // Keep idle connections open long enough to be reused between requests, rather than
+        // closing and reopening them constantly.
+        .maxIdleTime(poolMaxIdleTime)
+        .maxLifeTime(poolMaxLifeTime)
+        .maxAcquireTime(poolMaxAcquireTime)
         .build();
 
     return new ConnectionPool(configuration);
@@ -28,10 +28,14 @@ public class VoteController {
   @Autowired
   private VoteRepository voteRepository;
 
+  @Autowired
+  private VoteTally voteTally;
+
   @PostMapping("/vote")
   public Mono<String> vote(ServerWebExchange serverWebExchange) {
     return serverWebExchange.getFormData()
         .flatMap(formData -> voteRepository.save(new Vote(formData.getFirst("team"))))
+        .doOnNext(vote -> voteTally.voteSaved(vote.getCandidate()))
         .map(vote ->
             String.format("Vote successfully cast for '%s' at time %s!%n",
                 vote.getCandidate(), vote.getTimeCast()));
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudsql.r2dbcsample;
+
+import io.r2dbc.spi.ConnectionFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps the number of votes per candidate in memory, so rendering the page does not need to count
+ * the rows of the vote table.
+ *
+ * <p>Votes saved through this instance are added as soon as they are stored. The counts are
+ * periodically reconciled with a single GROUP BY query, which also picks up votes cast through
+ * other instances.
+ */
+@Component
+public class VoteTally {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(VoteTally.class);
+
+  static final List<String> CANDIDATES = Arrays.asList("TABS", "SPACES");
+
+  private static class Counter {
+    // Count as of the last reconcile, plus votes saved through this instance since then.
+    private volatile long base;
+    private final LongAdder delta = new LongAdder();
+  }
+
+  private final Map<String, Counter> counters = new HashMap<>();
+
+  @Autowired
+  private ConnectionFactory connectionFactory;
+
+  @Value("${tally.reconcileInterval:1m}")
+  private Duration reconcileInterval;
+
+  // Set once the counts have been loaded from the database.
+  private volatile boolean loaded;
+  // The first load, shared by the requests that arrive while it runs.
+  private Mono<Void> initialLoad;
+  private Disposable reconciler;
+
+  public VoteTally() {
+    for (String candidate : CANDIDATES) {
+      counters.put(candidate, new Counter());
+    }
+  }
+
+  @PostConstruct
+  public void start() {
+    reconciler =
+        Flux.interval(reconcileInterval, reconcileInterval)
+            .onBackpressureDrop()
+            .concatMap(
+                tick ->
+                    reconcile()
+                        .onErrorResume(
+                            ex -> {
+                              LOGGER.warn("Unable to reconcile vote tally.", ex);
+                              return Mono.empty();
+                            }))
+            .subscribe();
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (reconciler != null) {
+      reconciler.dispose();
+    }
+  }
+
+  /** Returns the number of votes for a candidate without querying the database. */
+  public Mono<Long> getCount(String candidate) {
+    Counter counter = counters.get(candidate);
+    if (counter == null) {
+      return Mono.just(0L);
+    }
+    Mono<Long> count = Mono.fromSupplier(() -> counter.base + counter.delta.sum());
+    return loaded ? count : initialLoad().then(count);
+  }
+
+  private synchronized Mono<Void> initialLoad() {
+    if (initialLoad == null) {
+      // Forget a failed load, so that the next request tries again.
+      initialLoad = reconcile().doOnError(ex -> clearInitialLoad()).cache();
+    }
+    return initialLoad;
+  }
+
+  private synchronized void clearInitialLoad() {
+    initialLoad = null;
+  }
+
+  /** Counts a vote in memory. Call once the vote has been saved. */
+  public void voteSaved(String candidate) {
+    Counter counter = counters.get(candidate);
+    if (counter != null) {
+      counter.delta.increment();
+    }
+  }
+
+  /** Recounts the votes in the database and replaces the in-memory counts. */
+  public Mono<Void> reconcile() {
+    return Mono.defer(
+        () -> {
+          // Reset the local deltas before counting, so a vote saved in between is counted twice
+          // until the next reconcile rather than lost.
+          Map<String, Long> pending = new HashMap<>();
+          for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            pending.put(entry.getKey(), entry.getValue().delta.sumThenReset());
+          }
+          return countVotes()
+              .doOnNext(
+                  counts -> {
+                    for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                      entry.getValue().base = counts.getOrDefault(entry.getKey(), 0L);
+                    }
+                    loaded = true;
+                  })
+              .doOnError(
+                  ex ->
+                      // Put back the votes that were not replaced by a count from the database.
+                      pending.forEach(
+                          (candidate, count) -> counters.get(candidate).delta.add(count)))
+              .then();
+        });
+  }
+
+  /** Counts the votes for each candidate in the database. */
+  Mono<Map<String, Long>> countVotes() {
+    return DatabaseClient.create(connectionFactory)
+        .execute("SELECT candidate, COUNT(1) AS vote_count FROM vote GROUP BY candidate")
+        .map(
+            (row, metadata) ->
+                Map.entry(
+                    row.get("candidate", String.class).trim(),
+                    row.get("vote_count", Number.class).longValue()))
+        .all()
+        .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+  }
+}
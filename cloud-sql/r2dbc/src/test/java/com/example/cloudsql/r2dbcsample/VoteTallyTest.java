@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudsql.r2dbcsample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+public class VoteTallyTest {
+
+  // Answers the GROUP BY query with whatever result the test sets, counting the queries.
+  private static class FakeTally extends VoteTally {
+    private final AtomicInteger queries = new AtomicInteger();
+    private Mono<Map<String, Long>> result = Mono.just(Map.of());
+
+    @Override
+    Mono<Map<String, Long>> countVotes() {
+      return Mono.defer(
+          () -> {
+            queries.incrementAndGet();
+            return result;
+          });
+    }
+  }
+
+  private FakeTally tally;
+
+  @Before
+  public void setUp() {
+    tally = new FakeTally();
+  }
+
+  @Test
+  public void getCount_loadsCountsOnce() {
+    tally.result = Mono.just(Map.of("TABS", 3L, "SPACES", 5L));
+
+    assertEquals(3L, (long) tally.getCount("TABS").block());
+    assertEquals(5L, (long) tally.getCount("SPACES").block());
+    assertEquals(1, tally.queries.get());
+  }
+
+  @Test
+  public void getCount_missingCandidateIsZero() {
+    tally.result = Mono.just(Map.of("TABS", 3L));
+
+    assertEquals(0L, (long) tally.getCount("SPACES").block());
+    assertEquals(0L, (long) tally.getCount("UNKNOWN").block());
+  }
+
+  @Test
+  public void voteSaved_addsToLoadedCount() {
+    tally.result = Mono.just(Map.of("TABS", 3L));
+    tally.getCount("TABS").block();
+
+    tally.voteSaved("TABS");
+    tally.voteSaved("TABS");
+    tally.voteSaved("SPACES");
+
+    assertEquals(5L, (long) tally.getCount("TABS").block());
+    assertEquals(1L, (long) tally.getCount("SPACES").block());
+    assertEquals(1, tally.queries.get());
+  }
+
+  @Test
+  public void reconcile_replacesLocalVotesWithDatabaseCount() {
+    tally.result = Mono.just(Map.of("TABS", 3L));
+    tally.getCount("TABS").block();
+    tally.voteSaved("TABS");
+    tally.voteSaved("TABS");
+
+    // The database now holds the two local votes and one cast through another instance.
+    tally.result = Mono.just(Map.of("TABS", 6L));
+    tally.reconcile().block();
+
+    assertEquals(6L, (long) tally.getCount("TABS").block());
+  }
+
+  @Test
+  public void reconcile_voteSavedWhileCountingIsKept() {
+    tally.result = Mono.just(Map.of("TABS", 3L));
+    tally.getCount("TABS").block();
+
+    // The vote is saved after the deltas were reset but before the count was read, so it is
+    // counted by the database and again locally until the next reconcile.
+    tally.result =
+        Mono.fromSupplier(
+            () -> {
+              tally.voteSaved("TABS");
+              return Map.of("TABS", 4L);
+            });
+    tally.reconcile().block();
+    assertEquals(5L, (long) tally.getCount("TABS").block());
+
+    tally.result = Mono.just(Map.of("TABS", 4L));
+    tally.reconcile().block();
+    assertEquals(4L, (long) tally.getCount("TABS").block());
+  }
+
+  @Test
+  public void reconcile_failureKeepsLocalVotes() {
+    tally.result = Mono.just(Map.of("TABS", 3L));
+    tally.getCount("TABS").block();
+    tally.voteSaved("TABS");
+
+    tally.result = Mono.error(new IllegalStateException("connection lost"));
+    try {
+      tally.reconcile().block();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+      // The local vote is put back.
+    }
+
+    assertEquals(4L, (long) tally.getCount("TABS").block());
+  }
+
+  @Test
+  public void getCount_concurrentRequestsShareInitialLoad() {
+    Sinks.One<Map<String, Long>> counts = Sinks.one();
+    tally.result = counts.asMono();
+
+    List<Long> results = new ArrayList<>();
+    tally.getCount("TABS").subscribe(results::add);
+    tally.getCount("TABS").subscribe(results::add);
+    tally.getCount("SPACES").subscribe(results::add);
+    assertEquals(1, tally.queries.get());
+
+    counts.tryEmitValue(Map.of("TABS", 3L, "SPACES", 5L));
+
+    assertEquals(List.of(3L, 3L, 5L), results);
+    assertEquals(1, tally.queries.get());
+  }
+
+  @Test
+  public void getCount_failedInitialLoadIsRetried() {
+    tally.result = Mono.error(new IllegalStateException("connection lost"));
+    try {
+      tally.getCount("TABS").block();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+      // The next request loads the counts again.
+    }
+
+    tally.result = Mono.just(Map.of("TABS", 3L));
+
+    assertEquals(3L, (long) tally.getCount("TABS").block());
+    assertEquals(2, tally.queries.get());
+  }
+}
@@ -21,7 +21,12 @@ import com.zaxxer.hikari.HikariDataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
@@ -40,6 +45,29 @@ public class ConnectionPoolContextListener implements ServletContextListener {
   private static final String DB_PASS = System.getenv("DB_PASS");
   private static final String DB_NAME = System.getenv("DB_NAME");
 
+  private static final long TALLY_REFRESH_SECONDS = 5;
+  private static final long TALLY_RECONCILE_MINUTES = 10;
+  private static final int VOTE_BATCH_SIZE = 500;
+  private static final long VOTE_FLUSH_MILLIS = 5;
+  // Set DB_POOL_ADAPTIVE=true to resize the pool between DB_POOL_MIN and DB_POOL_MAX connections
+  // based on demand, instead of using a fixed size.
+  private static final boolean DB_POOL_ADAPTIVE =
+      Boolean.parseBoolean(System.getenv("DB_POOL_ADAPTIVE"));
+  private static final int DB_POOL_MIN = getIntEnv("DB_POOL_MIN", 2);
+  private static final int DB_POOL_MAX = getIntEnv("DB_POOL_MAX", 20);
+  private static final long POOL_SIZER_SECONDS = 1;
+  private static final int POOL_SHRINK_AFTER_SAMPLES = 30;
+
+  private ScheduledExecutorService tallyScheduler;
+  private VoteWriter voteWriter;
+  private ScheduledExecutorService poolScheduler;
+  private final PoolMetrics poolMetrics = new PoolMetrics();
+
+  private static int getIntEnv(String name, int defaultValue) {
+    String value = System.getenv(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
   private DataSource createConnectionPool() {
     // [START cloud_sql_sqlserver_servlet_create]
     // Note: For Java users, the Cloud SQL JDBC Socket Factory can provide authenticated connections
@@ -104,6 +132,14 @@ public class ConnectionPoolContextListener implements ServletContextListener {
     config.setMaxLifetime(1800000); // 30 minutes
     // [END cloud_sql_sqlserver_servlet_lifetime]
 
+    // Record connection wait, usage and creation times for the /metrics servlet.
+    config.setMetricsTrackerFactory(poolMetrics);
+    if (DB_POOL_ADAPTIVE) {
+      // Start small and let the PoolSizer grow the pool while requests wait for connections.
+      config.setMinimumIdle(DB_POOL_MIN);
+      config.setMaximumPoolSize(DB_POOL_MIN);
+    }
+
     // [END_EXCLUDE]
 
     // Initialize the connection pool using the configuration object.
@@ -125,12 +161,70 @@ public class ConnectionPoolContextListener implements ServletContextListener {
               + "PRIMARY KEY (vote_id));"
       );
       createTableStatement.execute();
+      VoteTally.createTable(conn);
     }
   }
 
+  private void startVoteTally(ServletContext servletContext, DataSource pool)
+      throws SQLException {
+    VoteTally tally = new VoteTally();
+    tally.reconcile(pool);
+    servletContext.setAttribute("vote-tally", tally);
+
+    // Pick up votes cast through other instances, and periodically recount the votes table to
+    // correct any drift between it and the tally.
+    tallyScheduler = Executors.newSingleThreadScheduledExecutor();
+    tallyScheduler.scheduleWithFixedDelay(
+        () -> {
+          try {
+            tally.refresh(pool);
+          } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "Unable to refresh vote tally.", ex);
+          }
+        },
+        TALLY_REFRESH_SECONDS,
+        TALLY_REFRESH_SECONDS,
+        TimeUnit.SECONDS);
+    tallyScheduler.scheduleWithFixedDelay(
+        () -> {
+          try {
+            tally.reconcile(pool);
+          } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "Unable to reconcile vote tally.", ex);
+          }
+        },
+        TALLY_RECONCILE_MINUTES,
+        TALLY_RECONCILE_MINUTES,
+        TimeUnit.MINUTES);
+  }
+
+  private void startVoteWriter(ServletContext servletContext, DataSource pool) {
+    // Group concurrent votes into batched transactions, updating the tally in the same
+    // transaction as the inserts.
+    VoteTally tally = (VoteTally) servletContext.getAttribute("vote-tally");
+    voteWriter = new VoteWriter(pool, tally, VOTE_BATCH_SIZE, VOTE_FLUSH_MILLIS);
+    servletContext.setAttribute("vote-writer", voteWriter);
+  }
+
+  private void startPoolSizer(HikariDataSource pool) {
+    PoolSizer sizer = new PoolSizer(pool, DB_POOL_MIN, DB_POOL_MAX, POOL_SHRINK_AFTER_SAMPLES);
+    poolScheduler = Executors.newSingleThreadScheduledExecutor();
+    poolScheduler.scheduleWithFixedDelay(
+        sizer, POOL_SIZER_SECONDS, POOL_SIZER_SECONDS, TimeUnit.SECONDS);
+  }
+
   @Override
   public void contextDestroyed(ServletContextEvent event) {
     // This function is called when the Servlet is destroyed.
+    if (poolScheduler != null) {
+      poolScheduler.shutdownNow();
+    }
+    if (voteWriter != null) {
+      voteWriter.close();
+    }
+    if (tallyScheduler != null) {
+      tallyScheduler.shutdownNow();
+    }
     HikariDataSource pool = (HikariDataSource) event.getServletContext().getAttribute("my-pool");
     if (pool != null) {
       pool.close();
@@ -145,9 +239,15 @@ public class ConnectionPoolContextListener implements ServletContextListener {
     if (pool == null) {
       pool = createConnectionPool();
       event.getServletContext().setAttribute("my-pool", pool);
+      event.getServletContext().setAttribute("pool-metrics", poolMetrics);
+      if (DB_POOL_ADAPTIVE) {
+        startPoolSizer((HikariDataSource) pool);
+      }
     }
     try {
       createTable(pool);
+      startVoteTally(event.getServletContext(), pool);
+      startVoteWriter(event.getServletContext(), pool);
     } catch (SQLException ex) {
       throw new RuntimeException("Unable to verify table schema. Please double check the steps"
           + "in the README and try again.", ex);
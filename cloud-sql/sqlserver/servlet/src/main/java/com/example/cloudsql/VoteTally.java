@@ -0,0 +1,159 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudsql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+
+/**
+ * Keeps a running count of votes per candidate, so that rendering the page does not need to count
+ * the rows of the votes table.
+ *
+ * <p>Each vote increments the candidate's row in the vote_tally table in the same transaction that
+ * inserts the vote, and the in-memory counter once that transaction commits. Votes cast through
+ * other instances are picked up by {@link #refresh}, and {@link #reconcile} recounts the votes
+ * table to correct any drift. Both are scheduled by the ConnectionPoolContextListener.
+ */
+public class VoteTally {
+
+  static final List<String> CANDIDATES = Arrays.asList("TABS", "SPACES");
+
+  private static class Counter {
+    // Count as of the last refresh, plus votes committed through this instance since then.
+    private volatile long base;
+    private final LongAdder delta = new LongAdder();
+  }
+
+  private final Map<String, Counter> counters = new HashMap<>();
+
+  public VoteTally() {
+    for (String candidate : CANDIDATES) {
+      counters.put(candidate, new Counter());
+    }
+  }
+
+  static void createTable(Connection conn) throws SQLException {
+    String stmt =
+        "IF NOT EXISTS ("
+            + "SELECT * FROM sysobjects WHERE name='vote_tally' and xtype='U')"
+            + "CREATE TABLE vote_tally ("
+            + "candidate VARCHAR(6) NOT NULL,"
+            + "vote_count BIGINT NOT NULL,"
+            + "PRIMARY KEY (candidate));";
+    try (PreparedStatement createTableStatement = conn.prepareStatement(stmt);) {
+      createTableStatement.execute();
+    }
+  }
+
+  /** Returns the number of votes for a candidate without querying the database. */
+  public long getCount(String candidate) {
+    Counter counter = counters.get(candidate);
+    return counter.base + counter.delta.sum();
+  }
+
+  /**
+   * Increments the candidate's tally row. Must be called in the transaction that inserts the vote.
+   */
+  public void recordVote(Connection conn, String candidate) throws SQLException {
+    recordVotes(conn, candidate, 1);
+  }
+
+  /**
+   * Adds several votes to the candidate's tally row. Must be called in the transaction that
+   * inserts the votes.
+   */
+  public void recordVotes(Connection conn, String candidate, int count) throws SQLException {
+    String stmt = "UPDATE vote_tally SET vote_count = vote_count + ? WHERE candidate = ?;";
+    try (PreparedStatement tallyStmt = conn.prepareStatement(stmt);) {
+      tallyStmt.setInt(1, count);
+      tallyStmt.setString(2, candidate);
+      tallyStmt.execute();
+    }
+  }
+
+  /** Counts a vote in memory. Call once the transaction that recorded it has committed. */
+  public void voteCommitted(String candidate) {
+    votesCommitted(candidate, 1);
+  }
+
+  /** Counts several votes in memory. Call once the transaction that recorded them has committed. */
+  public void votesCommitted(String candidate, int count) {
+    counters.get(candidate).delta.add(count);
+  }
+
+  /** Reloads the in-memory counters from the vote_tally table. */
+  public void refresh(DataSource pool) throws SQLException {
+    // Reset the local deltas before reading, so a vote committed in between is counted twice until
+    // the next refresh rather than lost.
+    Map<String, Long> pending = new HashMap<>();
+    for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+      pending.put(entry.getKey(), entry.getValue().delta.sumThenReset());
+    }
+    try (Connection conn = pool.getConnection()) {
+      String stmt = "SELECT candidate, vote_count FROM vote_tally;";
+      try (PreparedStatement tallyStmt = conn.prepareStatement(stmt);) {
+        ResultSet tallyResults = tallyStmt.executeQuery();
+        while (tallyResults.next()) {
+          String candidate = tallyResults.getString(1).trim();
+          Counter counter = counters.get(candidate);
+          if (counter != null) {
+            counter.base = tallyResults.getLong(2);
+            pending.remove(candidate);
+          }
+        }
+      }
+    } catch (SQLException ex) {
+      // Put back the votes that were not replaced by a value from the database.
+      pending.forEach((candidate, count) -> counters.get(candidate).delta.add(count));
+      throw ex;
+    }
+  }
+
+  /**
+   * Recounts the votes table into vote_tally and reloads the in-memory counters. This scans the
+   * votes table, so it should run far less often than {@link #refresh}.
+   */
+  public void reconcile(DataSource pool) throws SQLException {
+    try (Connection conn = pool.getConnection()) {
+      String stmt =
+          "MERGE vote_tally WITH (HOLDLOCK) AS t "
+              + "USING (SELECT ? AS candidate, COUNT(vote_id) AS vote_count "
+              + "FROM votes WHERE candidate = ?) AS s "
+              + "ON t.candidate = s.candidate "
+              + "WHEN MATCHED THEN UPDATE SET vote_count = s.vote_count "
+              + "WHEN NOT MATCHED THEN INSERT (candidate, vote_count) "
+              + "VALUES (s.candidate, s.vote_count);";
+      try (PreparedStatement reconcileStmt = conn.prepareStatement(stmt);) {
+        for (String candidate : CANDIDATES) {
+          reconcileStmt.setString(1, candidate);
+          reconcileStmt.setString(2, candidate);
+          reconcileStmt.addBatch();
+        }
+        reconcileStmt.executeBatch();
+      }
+    }
+    refresh(pool);
+  }
+}
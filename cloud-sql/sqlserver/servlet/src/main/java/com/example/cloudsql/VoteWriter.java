@@ -0,0 +1,152 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudsql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+/**
+ * Inserts votes using group commit: votes submitted by concurrent requests are queued and written
+ * together, with one batched INSERT and one commit per flush, instead of one connection checkout
+ * and commit per vote.
+ *
+ * <p>Each submitted vote gets a future that completes once the batch containing it has been
+ * committed, so callers can still report success only for stored votes.
+ */
+public class VoteWriter {
+
+  private static final Logger LOGGER = Logger.getLogger(VoteWriter.class.getName());
+
+  private static class PendingVote {
+    private final Timestamp timeCast;
+    private final String candidate;
+    private final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+    PendingVote(Timestamp timeCast, String candidate) {
+      this.timeCast = timeCast;
+      this.candidate = candidate;
+    }
+  }
+
+  private final DataSource pool;
+  @Nullable private final VoteTally tally;
+  private final int maxBatchSize;
+  private final ConcurrentLinkedQueue<PendingVote> queue = new ConcurrentLinkedQueue<>();
+  private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+
+  /**
+   * Creates a writer and starts flushing.
+   *
+   * @param pool connection pool used for the inserts
+   * @param tally tally to update in the same transaction as each batch, or null
+   * @param maxBatchSize maximum number of votes written in one transaction
+   * @param flushIntervalMillis delay between flushes while the queue is empty
+   */
+  public VoteWriter(
+      DataSource pool, @Nullable VoteTally tally, int maxBatchSize, long flushIntervalMillis) {
+    this.pool = pool;
+    this.tally = tally;
+    this.maxBatchSize = maxBatchSize;
+    flusher.scheduleWithFixedDelay(
+        this::flushAll, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Queues a vote. The returned future completes when the vote has been committed. */
+  public CompletableFuture<Void> submit(Timestamp timeCast, String candidate) {
+    PendingVote vote = new PendingVote(timeCast, candidate);
+    queue.add(vote);
+    return vote.committed;
+  }
+
+  /** Stops flushing. Votes still queued are failed. */
+  public void close() {
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    for (PendingVote vote = queue.poll(); vote != null; vote = queue.poll()) {
+      vote.committed.completeExceptionally(new IllegalStateException("VoteWriter is closed."));
+    }
+  }
+
+  private void flushAll() {
+    // Keep writing batches while votes arrive faster than they can be written.
+    while (!queue.isEmpty()) {
+      List<PendingVote> batch = new ArrayList<>(maxBatchSize);
+      for (PendingVote vote = queue.poll(); vote != null; vote = queue.poll()) {
+        batch.add(vote);
+        if (batch.size() >= maxBatchSize) {
+          break;
+        }
+      }
+      try {
+        writeBatch(batch);
+        for (PendingVote committed : batch) {
+          committed.committed.complete(null);
+        }
+      } catch (SQLException | RuntimeException ex) {
+        LOGGER.log(Level.WARNING, "Error while attempting to write a batch of votes.", ex);
+        for (PendingVote failed : batch) {
+          failed.committed.completeExceptionally(ex);
+        }
+      }
+    }
+  }
+
+  private void writeBatch(List<PendingVote> batch) throws SQLException {
+    Map<String, Integer> votesPerCandidate = new HashMap<>();
+    try (Connection conn = pool.getConnection()) {
+      conn.setAutoCommit(false);
+      String stmt = "INSERT INTO votes (time_cast, candidate) VALUES (?, ?);";
+      try (PreparedStatement voteStmt = conn.prepareStatement(stmt);) {
+        for (PendingVote vote : batch) {
+          voteStmt.setTimestamp(1, vote.timeCast);
+          voteStmt.setString(2, vote.candidate);
+          voteStmt.addBatch();
+          votesPerCandidate.merge(vote.candidate, 1, Integer::sum);
+        }
+        voteStmt.executeBatch();
+      }
+      if (tally != null) {
+        for (Map.Entry<String, Integer> entry : votesPerCandidate.entrySet()) {
+          tally.recordVotes(conn, entry.getKey(), entry.getValue());
+        }
+      }
+      conn.commit();
+    }
+    if (tally != null) {
+      votesPerCandidate.forEach(tally::votesCommitted);
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudsql;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VoteWriterTest {
+
+  private final DataSource pool = mock(DataSource.class);
+  private final Connection conn = mock(Connection.class);
+  private final PreparedStatement voteStmt = mock(PreparedStatement.class);
+  private VoteWriter voteWriter;
+
+  @Before
+  public void setUp() throws SQLException {
+    when(pool.getConnection()).thenReturn(conn);
+    when(conn.prepareStatement(anyString())).thenReturn(voteStmt);
+    voteWriter = new VoteWriter(pool, null, 500, 5);
+  }
+
+  @After
+  public void tearDown() {
+    voteWriter.close();
+  }
+
+  @Test
+  public void testSubmitCommitsVotes() throws Exception {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+
+    CompletableFuture<Void> tabs = voteWriter.submit(now, "TABS");
+    CompletableFuture<Void> spaces = voteWriter.submit(now, "SPACES");
+    tabs.get(10, TimeUnit.SECONDS);
+    spaces.get(10, TimeUnit.SECONDS);
+
+    verify(conn, atLeastOnce())
+        .prepareStatement("INSERT INTO votes (time_cast, candidate) VALUES (?, ?);");
+    verify(voteStmt).setString(2, "TABS");
+    verify(voteStmt).setString(2, "SPACES");
+    verify(voteStmt, times(2)).addBatch();
+    verify(conn, atLeastOnce()).commit();
+  }
+
+  @Test
+  public void testSubmitFailsWhenBatchFails() throws Exception {
+    SQLException failure = new SQLException("Connection reset");
+    when(voteStmt.executeBatch()).thenThrow(failure);
+
+    CompletableFuture<Void> vote =
+        voteWriter.submit(new Timestamp(System.currentTimeMillis()), "TABS");
+
+    ExecutionException thrown =
+        assertThrows(ExecutionException.class, () -> vote.get(10, TimeUnit.SECONDS));
+    assertThat(thrown).hasCauseThat().isSameInstanceAs(failure);
+    verify(conn, never()).commit();
+  }
+
+  @Test
+  public void testWriterKeepsFlushingAfterFailure() throws Exception {
+    when(voteStmt.executeBatch())
+        .thenThrow(new IllegalStateException("Pool is closed"))
+        .thenReturn(new int[] {1});
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+
+    CompletableFuture<Void> failed = voteWriter.submit(now, "TABS");
+    assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+    voteWriter.submit(now, "SPACES").get(10, TimeUnit.SECONDS);
+
+    verify(conn).commit();
+  }
+}
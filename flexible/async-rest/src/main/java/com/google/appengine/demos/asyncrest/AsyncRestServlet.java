@@ -19,8 +19,12 @@ package com.google.appengine.demos.asyncrest;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.AsyncContext;
@@ -32,14 +36,15 @@ import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.http.HttpMethod;
-import org.eclipse.jetty.util.BufferUtil;
-import org.eclipse.jetty.util.Utf8StringBuilder;
-import org.eclipse.jetty.util.ajax.JSON;
+import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 
 /**
  * Servlet which makes REST calls asynchronously.
  *
+ * <p>Results are cached per location, radius and item for {@link #CACHE_TTL_SECONDS}, and each
+ * response is parsed as it arrives rather than after it has been read in full.
+ *
  * <p>May be configured with init parameters:
  * <dl>
  * <dt>appid</dt>
@@ -53,7 +58,11 @@ public class AsyncRestServlet extends AbstractRestServlet {
   static final String DURATION_ATTR = "com.google.appengine.demos.asyncrest.duration";
   static final String START_ATTR = "com.google.appengine.demos.asyncrest.start";
 
+  static final long CACHE_TTL_SECONDS = 300;
+  static final int CACHE_MAX_ENTRIES = 1000;
+
   HttpClient client;
+  final PlacesCache cache = new PlacesCache(CACHE_TTL_SECONDS, CACHE_MAX_ENTRIES);
 
   @Override
   public void init(ServletConfig servletConfig) throws ServletException {
@@ -103,22 +112,18 @@ public class AsyncRestServlet extends AbstractRestServlet {
 
       final AtomicInteger outstanding = new AtomicInteger(keywords.length);
 
-      // Send request each keyword.
+      // Send request each keyword, unless its results are cached or already being fetched.
+      String coordinates = lat + "," + longitude;
       for (final String item : keywords) {
-        client.newRequest(restQuery(lat + "," + longitude, radius, item))
-            .method(HttpMethod.GET)
-            .send(
-                new AsyncRestRequest() {
-                  @Override
-                  void onLocationFound(Map<String, Object> result) {
-                    resultsQueue.add(result);
+        cache
+            .get(coordinates, radius, item, () -> fetch(restQuery(coordinates, radius, item)))
+            .whenComplete(
+                (places, failure) -> {
+                  if (places != null) {
+                    resultsQueue.addAll(places);
                   }
-
-                  @Override
-                  void doComplete() {
-                    if (outstanding.decrementAndGet() <= 0) {
-                      async.dispatch();
-                    }
+                  if (outstanding.decrementAndGet() <= 0) {
+                    async.dispatch();
                   }
                 });
       }
@@ -185,39 +190,41 @@ public class AsyncRestServlet extends AbstractRestServlet {
     out.close();
   }
 
-  private abstract class AsyncRestRequest extends Response.Listener.Adapter {
-
-    final Utf8StringBuilder utf8Content = new Utf8StringBuilder();
-
-    AsyncRestRequest() {
-    }
-
-    @Override
-    public void onContent(Response response, ByteBuffer content) {
-      byte[] bytes = BufferUtil.toArray(content);
-      utf8Content.append(bytes, 0, bytes.length);
-    }
-
-    @Override
-    public void onComplete(Result result) {
-      // Extract results.
-      Map<String, Object> data = (Map<String, Object>) JSON.parse(utf8Content.toString());
-      if (data != null) {
-        Object[] results = (Object[]) data.get("results");
-        if (results != null) {
-          for (Object o : results) {
-            onLocationFound((Map<String, Object>) o);
-          }
-        }
-      }
-      doComplete();
-
-    }
-
-    abstract void onLocationFound(Map<String, Object> details);
-
-    abstract void doComplete();
-
+  private CompletableFuture<List<Map<String, Object>>> fetch(String url) {
+    CompletableFuture<List<Map<String, Object>>> future = new CompletableFuture<>();
+    List<Map<String, Object>> places = new ArrayList<>();
+    PlacesJsonParser parser = new PlacesJsonParser(places::add);
+    client.newRequest(url)
+        .method(HttpMethod.GET)
+        .send(
+            new Response.Listener.Adapter() {
+              @Override
+              public void onContent(Response response, ByteBuffer content) {
+                parser.feed(content);
+              }
+
+              @Override
+              public void onComplete(Result result) {
+                if (result.isFailed()) {
+                  future.completeExceptionally(result.getFailure());
+                } else if (result.getResponse().getStatus() != HttpStatus.OK_200) {
+                  // Not cached, so the query is retried by the next request.
+                  int status = result.getResponse().getStatus();
+                  future.completeExceptionally(
+                      new IOException("Places search returned HTTP " + status));
+                } else if (!parser.isOk()) {
+                  // Errors such as OVER_QUERY_LIMIT come with HTTP 200, and are not cached either.
+                  String message = "Places search returned status " + parser.getStatus();
+                  if (parser.getErrorMessage() != null) {
+                    message += ": " + parser.getErrorMessage();
+                  }
+                  future.completeExceptionally(new IOException(message));
+                } else {
+                  future.complete(Collections.unmodifiableList(places));
+                }
+              }
+            });
+    return future;
   }
 
   @Override
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.appengine.demos.asyncrest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caches Places search results by location, radius and item, shared by all requests.
+ *
+ * <p>Results are kept for {@code ttlSeconds}. Concurrent requests for a query that is already
+ * being fetched wait for that fetch instead of starting another one. Failed fetches are not cached.
+ */
+public class PlacesCache {
+
+  private static class Entry {
+    private final CompletableFuture<List<Map<String, Object>>> places;
+    // Set once the fetch has succeeded: an entry that is still being fetched never expires.
+    private volatile boolean loaded;
+    private volatile long expiresAtNanos;
+
+    Entry(CompletableFuture<List<Map<String, Object>>> places) {
+      this.places = places;
+    }
+
+    boolean isExpired(long now) {
+      return loaded && now - expiresAtNanos >= 0;
+    }
+  }
+
+  private final ConcurrentHashMap<List<String>, Entry> entries = new ConcurrentHashMap<>();
+  private final long ttlNanos;
+  private final int maxEntries;
+
+  public PlacesCache(long ttlSeconds, int maxEntries) {
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Returns the cached or in-flight results of a query, or starts fetching them with {@code fetch}.
+   */
+  public CompletableFuture<List<Map<String, Object>>> get(
+      String location,
+      String radius,
+      String item,
+      Supplier<CompletableFuture<List<Map<String, Object>>>> fetch) {
+    List<String> key = Arrays.asList(location, radius, item);
+    long now = System.nanoTime();
+    Entry entry = entries.get(key);
+    if (entry != null && !entry.isExpired(now)) {
+      return entry.places;
+    }
+    if (entries.size() >= maxEntries) {
+      evictExpired(now);
+    }
+
+    Entry fresh = new Entry(new CompletableFuture<>());
+    Entry existing =
+        entries.compute(key, (k, old) -> old == null || old.isExpired(now) ? fresh : old);
+    if (existing != fresh) {
+      // Another request started fetching this query first.
+      return existing.places;
+    }
+    CompletableFuture<List<Map<String, Object>>> fetched;
+    try {
+      fetched = fetch.get();
+    } catch (RuntimeException e) {
+      // Fail the waiting requests too, and let the next request try again.
+      entries.remove(key, fresh);
+      fresh.places.completeExceptionally(e);
+      return fresh.places;
+    }
+    fetched.whenComplete(
+        (places, failure) -> {
+          if (failure != null) {
+            entries.remove(key, fresh);
+            fresh.places.completeExceptionally(failure);
+          } else {
+            fresh.expiresAtNanos = System.nanoTime() + ttlNanos;
+            fresh.loaded = true;
+            fresh.places.complete(places);
+          }
+        });
+    if (entries.size() > maxEntries) {
+      // Still full of live entries: serve this result without keeping it.
+      entries.remove(key, fresh);
+    }
+    return fresh.places;
+  }
+
+  private void evictExpired(long now) {
+    entries.values().removeIf(entry -> entry.isExpired(now));
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.appengine.demos.asyncrest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Incrementally parses a Places API search response as its bytes arrive, keeping only the
+ * {@code name} and the {@code photo_reference} of each {@code photos} entry of every result.
+ *
+ * <p>The top-level {@code status} and {@code error_message} are kept as well, since the Places API
+ * reports errors such as {@code OVER_QUERY_LIMIT} in an HTTP 200 response.
+ *
+ * <p>Each result is passed to the consumer as soon as it has been parsed, as a map in the same
+ * shape {@link org.eclipse.jetty.util.ajax.JSON} produces: {@code name} is a String and {@code
+ * photos} an Object[] of maps holding {@code photo_reference}. Strings outside of these fields are
+ * skipped without being decoded, and the body is never held in memory as a whole.
+ *
+ * <p>The parser assumes well-formed JSON; it does not validate its input.
+ */
+public class PlacesJsonParser {
+
+  private static class Frame {
+    private final boolean object;
+    private String key;
+    private boolean expectingKey;
+
+    Frame(boolean object) {
+      this.object = object;
+      this.expectingKey = object;
+    }
+  }
+
+  private final Consumer<Map<String, Object>> onPlace;
+  private final List<Frame> frames = new ArrayList<>();
+
+  private boolean inString;
+  private boolean escape;
+  private boolean capture;
+  private int unicodeDigits;
+  private int unicodeValue;
+  private final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+  private final StringBuilder text = new StringBuilder();
+
+  private String placeName;
+  private List<Object> photos;
+  private String photoReference;
+  private String status;
+  private String errorMessage;
+
+  public PlacesJsonParser(Consumer<Map<String, Object>> onPlace) {
+    this.onPlace = onPlace;
+  }
+
+  /** Returns the top-level {@code status} of the response, or null if it has not been parsed. */
+  public String getStatus() {
+    return status;
+  }
+
+  /** Returns the top-level {@code error_message} of the response, or null if there is none. */
+  public String getErrorMessage() {
+    return errorMessage;
+  }
+
+  /** Returns whether the status reports a successful search, with or without results. */
+  public boolean isOk() {
+    return "OK".equals(status) || "ZERO_RESULTS".equals(status);
+  }
+
+  /** Parses the next chunk of the response. Chunks may split tokens and UTF-8 sequences. */
+  public void feed(ByteBuffer content) {
+    while (content.hasRemaining()) {
+      feed(content.get());
+    }
+  }
+
+  private void feed(byte b) {
+    if (inString) {
+      feedString(b);
+      return;
+    }
+    switch (b) {
+      case '"':
+        inString = true;
+        capture =
+            isKeyExpected() || isNameValue() || isPhotoReferenceValue() || isTopLevelValue();
+        text.setLength(0);
+        raw.reset();
+        break;
+      case '{':
+        frames.add(new Frame(true));
+        if (isPlace()) {
+          placeName = null;
+          photos = new ArrayList<>();
+        } else if (isPhoto()) {
+          photoReference = null;
+        }
+        break;
+      case '[':
+        frames.add(new Frame(false));
+        break;
+      case '}':
+        if (isPhoto()) {
+          if (photoReference != null) {
+            Map<String, Object> photo = new HashMap<>();
+            photo.put("photo_reference", photoReference);
+            photos.add(photo);
+          }
+        } else if (isPlace()) {
+          Map<String, Object> place = new HashMap<>();
+          place.put("name", placeName);
+          place.put("photos", photos.isEmpty() ? null : photos.toArray());
+          onPlace.accept(place);
+        }
+        frames.remove(frames.size() - 1);
+        break;
+      case ']':
+        frames.remove(frames.size() - 1);
+        break;
+      case ',':
+        if (!frames.isEmpty() && top().object) {
+          top().expectingKey = true;
+        }
+        break;
+      default:
+        // ':', whitespace, numbers, true, false and null carry nothing this parser needs.
+        break;
+    }
+  }
+
+  private void feedString(byte b) {
+    if (!capture) {
+      // Escaped characters are skipped; none of them can end the string.
+      if (escape) {
+        escape = false;
+      } else if (b == '\\') {
+        escape = true;
+      } else if (b == '"') {
+        inString = false;
+      }
+      return;
+    }
+    if (unicodeDigits > 0) {
+      unicodeValue = unicodeValue * 16 + Character.digit(b, 16);
+      if (--unicodeDigits == 0) {
+        text.append((char) unicodeValue);
+      }
+    } else if (escape) {
+      escape = false;
+      appendEscaped(b);
+    } else if (b == '\\') {
+      // Everything before an escape is complete UTF-8, since '\\' is never part of a sequence.
+      flushRaw();
+      escape = true;
+    } else if (b == '"') {
+      inString = false;
+      flushRaw();
+      onString(text.toString());
+    } else {
+      raw.write(b);
+    }
+  }
+
+  private void appendEscaped(byte b) {
+    switch (b) {
+      case 'b':
+        text.append('\b');
+        break;
+      case 'f':
+        text.append('\f');
+        break;
+      case 'n':
+        text.append('\n');
+        break;
+      case 'r':
+        text.append('\r');
+        break;
+      case 't':
+        text.append('\t');
+        break;
+      case 'u':
+        unicodeDigits = 4;
+        unicodeValue = 0;
+        break;
+      default:
+        // '"', '\\' and '/' stand for themselves.
+        text.append((char) b);
+        break;
+    }
+  }
+
+  private void flushRaw() {
+    if (raw.size() > 0) {
+      text.append(new String(raw.toByteArray(), StandardCharsets.UTF_8));
+      raw.reset();
+    }
+  }
+
+  private void onString(String value) {
+    if (isKeyExpected()) {
+      top().key = value;
+      top().expectingKey = false;
+    } else if (isNameValue()) {
+      placeName = value;
+    } else if (isPhotoReferenceValue()) {
+      photoReference = value;
+    } else if (isTopLevelValue() && "status".equals(top().key)) {
+      status = value;
+    } else if (isTopLevelValue() && "error_message".equals(top().key)) {
+      errorMessage = value;
+    }
+  }
+
+  private Frame top() {
+    return frames.get(frames.size() - 1);
+  }
+
+  private boolean isKeyExpected() {
+    return !frames.isEmpty() && top().object && top().expectingKey;
+  }
+
+  // Frames: {"status": value}
+  private boolean isTopLevelValue() {
+    return frames.size() == 1
+        && top().object
+        && ("status".equals(top().key) || "error_message".equals(top().key));
+  }
+
+  // Frames: {"results": [ {place} ]}
+  private boolean isPlace() {
+    return frames.size() == 3
+        && frames.get(0).object
+        && "results".equals(frames.get(0).key)
+        && !frames.get(1).object
+        && frames.get(2).object;
+  }
+
+  // Frames: {"results": [ {"photos": [ {photo} ]} ]}
+  private boolean isPhoto() {
+    return frames.size() == 5
+        && frames.get(0).object
+        && "results".equals(frames.get(0).key)
+        && !frames.get(1).object
+        && frames.get(2).object
+        && "photos".equals(frames.get(2).key)
+        && !frames.get(3).object
+        && frames.get(4).object;
+  }
+
+  private boolean isNameValue() {
+    return isPlace() && "name".equals(top().key);
+  }
+
+  private boolean isPhotoReferenceValue() {
+    return isPhoto() && "photo_reference".equals(top().key);
+  }
+}
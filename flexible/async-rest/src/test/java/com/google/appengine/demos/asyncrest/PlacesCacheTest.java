@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.appengine.demos.asyncrest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PlacesCacheTest {
+
+  private final AtomicInteger fetches = new AtomicInteger();
+
+  private CompletableFuture<List<Map<String, Object>>> get(
+      PlacesCache cache, String item, CompletableFuture<List<Map<String, Object>>> result) {
+    return cache.get(
+        "-33.8670522,151.1957362",
+        "500",
+        item,
+        () -> {
+          fetches.incrementAndGet();
+          return result;
+        });
+  }
+
+  @Test
+  public void sharesInFlightFetch() {
+    PlacesCache cache = new PlacesCache(60, 10);
+
+    CompletableFuture<List<Map<String, Object>>> first =
+        get(cache, "pizza", new CompletableFuture<>());
+    CompletableFuture<List<Map<String, Object>>> second =
+        get(cache, "pizza", new CompletableFuture<>());
+
+    assertSame(first, second);
+    assertEquals(1, fetches.get());
+  }
+
+  @Test
+  public void inFlightFetchNeverExpires() {
+    // With no time to live, only the loading state keeps the in-flight entry from expiring.
+    PlacesCache cache = new PlacesCache(0, 10);
+
+    CompletableFuture<List<Map<String, Object>>> first =
+        get(cache, "pizza", new CompletableFuture<>());
+    CompletableFuture<List<Map<String, Object>>> second =
+        get(cache, "pizza", new CompletableFuture<>());
+
+    assertSame(first, second);
+    assertEquals(1, fetches.get());
+  }
+
+  @Test
+  public void refetchesExpiredResult() {
+    PlacesCache cache = new PlacesCache(0, 10);
+
+    get(cache, "pizza", CompletableFuture.completedFuture(Collections.emptyList()));
+    get(cache, "pizza", CompletableFuture.completedFuture(Collections.emptyList()));
+
+    assertEquals(2, fetches.get());
+  }
+
+  @Test
+  public void doesNotCacheFailedFetch() {
+    PlacesCache cache = new PlacesCache(60, 10);
+    CompletableFuture<List<Map<String, Object>>> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new IllegalStateException("OVER_QUERY_LIMIT"));
+
+    CompletableFuture<List<Map<String, Object>>> first = get(cache, "pizza", failed);
+    CompletableFuture<List<Map<String, Object>>> second =
+        get(cache, "pizza", new CompletableFuture<>());
+
+    assertNotSame(first, second);
+    assertEquals(2, fetches.get());
+  }
+
+  @Test
+  public void keepsDifferentQueriesApart() {
+    PlacesCache cache = new PlacesCache(60, 10);
+
+    get(cache, "pizza", new CompletableFuture<>());
+    get(cache, "coffee", new CompletableFuture<>());
+
+    assertEquals(2, fetches.get());
+  }
+
+  @Test
+  public void doesNotKeepFetchThatThrows() {
+    PlacesCache cache = new PlacesCache(60, 10);
+
+    CompletableFuture<List<Map<String, Object>>> first =
+        cache.get(
+            "-33.8670522,151.1957362",
+            "500",
+            "pizza",
+            () -> {
+              throw new IllegalArgumentException("bad url");
+            });
+    CompletableFuture<List<Map<String, Object>>> second =
+        get(cache, "pizza", new CompletableFuture<>());
+
+    assertTrue(first.isCompletedExceptionally());
+    assertNotSame(first, second);
+    assertEquals(1, fetches.get());
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.appengine.demos.asyncrest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PlacesJsonParserTest {
+
+  private static final String RESPONSE =
+      "{\"html_attributions\":[],\"results\":["
+          + "{\"geometry\":{\"location\":{\"lat\":-33.86,\"lng\":151.19},"
+          + "\"viewport\":{\"name\":\"not a place\"}},"
+          + "\"name\":\"Café \\\"Z\\\" \\u00e9\\ud83d\\ude00\","
+          + "\"photos\":[{\"height\":1,\"html_attributions\":[\"<a href=\\\"x\\\">y</a>\"],"
+          + "\"photo_reference\":\"ref-1\",\"width\":2},{\"photo_reference\":\"ref-2\"}],"
+          + "\"types\":[\"cafe\",\"food\"]},"
+          + "{\"name\":\"日本\",\"opening_hours\":{\"open_now\":true}}"
+          + "],\"status\":\"OK\"}";
+
+  private static final String FIRST_NAME = "Café \"Z\" é😀";
+
+  private static List<Map<String, Object>> parse(byte[] json, int... splits) {
+    List<Map<String, Object>> places = new ArrayList<>();
+    PlacesJsonParser parser = new PlacesJsonParser(places::add);
+    int start = 0;
+    for (int split : splits) {
+      parser.feed(ByteBuffer.wrap(json, start, split - start));
+      start = split;
+    }
+    parser.feed(ByteBuffer.wrap(json, start, json.length - start));
+    return places;
+  }
+
+  private static Object[] photoReferences(Map<String, Object> place) {
+    return Arrays.stream((Object[]) place.get("photos"))
+        .map(photo -> ((Map<?, ?>) photo).get("photo_reference"))
+        .toArray();
+  }
+
+  private static void assertResponse(List<Map<String, Object>> places) {
+    assertEquals(2, places.size());
+    assertEquals(FIRST_NAME, places.get(0).get("name"));
+    assertArrayEquals(new Object[] {"ref-1", "ref-2"}, photoReferences(places.get(0)));
+    assertEquals("日本", places.get(1).get("name"));
+  }
+
+  @Test
+  public void parsesNamesAndPhotoReferences() {
+    assertResponse(parse(RESPONSE.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void ignoresNestedObjects() {
+    byte[] json = RESPONSE.getBytes(StandardCharsets.UTF_8);
+    for (Map<String, Object> place : parse(json)) {
+      assertEquals(2, place.size());
+    }
+  }
+
+  @Test
+  public void missingPhotosIsNull() {
+    List<Map<String, Object>> places = parse(RESPONSE.getBytes(StandardCharsets.UTF_8));
+    assertNull(places.get(1).get("photos"));
+  }
+
+  @Test
+  public void decodesUnicodeEscapes() {
+    String json = "{\"results\":[{\"name\":\"\\u0041\\u00E9\\u4e2d\\\\u0041\"}]}";
+    List<Map<String, Object>> places = parse(json.getBytes(StandardCharsets.UTF_8));
+    assertEquals("Aé中\\u0041", places.get(0).get("name"));
+  }
+
+  @Test
+  public void splitsUtf8SequenceAcrossChunks() {
+    String json = "{\"results\":[{\"name\":\"日\"}]}";
+    byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    int first = json.indexOf('日');
+    // Split after the first and after the second byte of the three-byte sequence.
+    List<Map<String, Object>> places = parse(bytes, first + 1, first + 2);
+    assertEquals("日", places.get(0).get("name"));
+  }
+
+  @Test
+  public void splitsEscapesAcrossChunks() {
+    String json = "{\"results\":[{\"name\":\"a\\\"b\\u00e9c\"}]}";
+    byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    int quoteEscape = json.indexOf("\\\"");
+    int unicodeEscape = json.indexOf("\\u");
+    List<Map<String, Object>> places =
+        parse(bytes, quoteEscape + 1, unicodeEscape + 1, unicodeEscape + 4);
+    assertEquals("a\"béc", places.get(0).get("name"));
+  }
+
+  @Test
+  public void parsesAnySplitOfTheResponse() {
+    byte[] json = RESPONSE.getBytes(StandardCharsets.UTF_8);
+    for (int split = 1; split < json.length; split++) {
+      assertResponse(parse(json, split));
+    }
+  }
+
+  @Test
+  public void parsesOneByteAtATime() {
+    byte[] json = RESPONSE.getBytes(StandardCharsets.UTF_8);
+    int[] splits = new int[json.length - 1];
+    for (int i = 0; i < splits.length; i++) {
+      splits[i] = i + 1;
+    }
+    assertResponse(parse(json, splits));
+  }
+
+  @Test
+  public void readsOkStatus() {
+    PlacesJsonParser parser = new PlacesJsonParser(place -> { });
+    parser.feed(ByteBuffer.wrap(RESPONSE.getBytes(StandardCharsets.UTF_8)));
+
+    assertEquals("OK", parser.getStatus());
+    assertTrue(parser.isOk());
+    assertNull(parser.getErrorMessage());
+  }
+
+  @Test
+  public void zeroResultsIsOk() {
+    PlacesJsonParser parser = new PlacesJsonParser(place -> { });
+    parser.feed(
+        ByteBuffer.wrap(
+            "{\"html_attributions\":[],\"results\":[],\"status\":\"ZERO_RESULTS\"}"
+                .getBytes(StandardCharsets.UTF_8)));
+
+    assertTrue(parser.isOk());
+  }
+
+  @Test
+  public void readsErrorStatus() {
+    String json =
+        "{\"error_message\":\"The provided API key is invalid.\",\"html_attributions\":[],"
+            + "\"results\":[{\"name\":\"ignored\",\"status\":\"OK\"}],"
+            + "\"status\":\"REQUEST_DENIED\"}";
+    List<Map<String, Object>> places = new ArrayList<>();
+    PlacesJsonParser parser = new PlacesJsonParser(places::add);
+    parser.feed(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+
+    assertEquals("REQUEST_DENIED", parser.getStatus());
+    assertFalse(parser.isOk());
+    assertEquals("The provided API key is invalid.", parser.getErrorMessage());
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.flexible.websocket.jettynative;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+
+/**
+ * Keeps a fixed number of WebSocket sessions open to one endpoint and spreads messages over them.
+ *
+ * <p>Sessions are opened on first use and reopened when they are found closed. Messages are sent
+ * asynchronously, so many messages can be in flight on the same session.
+ */
+public class ClientSessionPool {
+
+  /**
+   * Query parameter marking the server's sessions with this pool, so that they are not treated as
+   * browser clients.
+   */
+  public static final String POOLED_SESSION_PARAM = "pooled";
+
+  private static final long CONNECT_TIMEOUT_SECONDS = 10;
+
+  private final Logger logger = Logger.getLogger(ClientSessionPool.class.getName());
+  private final WebSocketClient webSocketClient;
+  private final URI endpoint;
+  private final Session[] sessions;
+  private final AtomicInteger next = new AtomicInteger();
+
+  public ClientSessionPool(WebSocketClient webSocketClient, URI endpoint, int size) {
+    this.webSocketClient = webSocketClient;
+    this.endpoint = URI.create(endpoint + "?" + POOLED_SESSION_PARAM + "=true");
+    this.sessions = new Session[size];
+  }
+
+  /** Sends a message over one of the sessions. The future completes once the message is sent. */
+  public CompletableFuture<Void> send(String message) {
+    int slot = Math.floorMod(next.getAndIncrement(), sessions.length);
+    CompletableFuture<Void> sent = new CompletableFuture<>();
+    Session session;
+    try {
+      session = getSession(slot);
+    } catch (Exception e) {
+      sent.completeExceptionally(e);
+      return sent;
+    }
+    session
+        .getRemote()
+        .sendString(
+            message,
+            new WriteCallback() {
+              @Override
+              public void writeFailed(Throwable cause) {
+                // Open a new session for this slot on its next use.
+                session.close();
+                sent.completeExceptionally(cause);
+              }
+
+              @Override
+              public void writeSuccess() {
+                sent.complete(null);
+              }
+            });
+    return sent;
+  }
+
+  /** Closes all open sessions. */
+  public void close() {
+    for (int slot = 0; slot < sessions.length; slot++) {
+      synchronized (sessions) {
+        if (sessions[slot] != null) {
+          sessions[slot].close();
+          sessions[slot] = null;
+        }
+      }
+    }
+  }
+
+  private Session getSession(int slot) throws Exception {
+    synchronized (sessions) {
+      Session session = sessions[slot];
+      if (session != null && session.isOpen()) {
+        return session;
+      }
+    }
+    // Connect outside the lock, so sends on other slots are not held up.
+    Session session =
+        webSocketClient
+            .connect(new ClientSocket(), endpoint, new ClientUpgradeRequest())
+            .get(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    synchronized (sessions) {
+      Session current = sessions[slot];
+      if (current != null && current.isOpen()) {
+        // Another request reconnected this slot first.
+        session.close();
+        return current;
+      }
+      sessions[slot] = session;
+      logger.fine("Opened pooled session " + slot + " to " + endpoint);
+      return session;
+    }
+  }
+}
@@ -20,7 +20,7 @@ import com.google.common.base.Preconditions;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -29,8 +29,6 @@ import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
-import org.eclipse.jetty.websocket.api.Session;
-import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
 
 @WebServlet("/send")
@@ -51,14 +49,20 @@ public class SendServlet extends HttpServlet {
   // GAE_SERVICE environment variable is set to the GCP service name.
   private static final String GAE_SERVICE_ENV_VAR = "GAE_SERVICE";
 
+  // Number of WebSocket sessions kept open to the echo endpoint.
+  private static final int SESSION_POOL_SIZE = 4;
+  private static final long SEND_TIMEOUT_SECONDS = 10;
+
   private final HttpClient httpClient;
   private final WebSocketClient webSocketClient;
-  private final ClientSocket clientSocket;
+  private final ClientSessionPool sessionPool;
 
   public SendServlet() {
     this.httpClient = createHttpClient();
     this.webSocketClient = createWebSocketClient();
-    this.clientSocket = new ClientSocket();
+    this.sessionPool =
+        new ClientSessionPool(
+            webSocketClient, URI.create(getWebSocketAddress()), SESSION_POOL_SIZE);
   }
 
   @Override
@@ -106,16 +110,19 @@ public class SendServlet extends HttpServlet {
         e.printStackTrace();
       }
     }
-    ClientUpgradeRequest request = new ClientUpgradeRequest();
-    // Attempt connection
-    Future<Session> future =
-        webSocketClient.connect(clientSocket, new URI(getWebSocketAddress()), request);
-    // Wait for Connect
-    Session session = future.get();
-    // Send a message
-    session.getRemote().sendString(message);
-    // Close session
-    session.close();
+    // Send the message over one of the pooled sessions, and wait until it is sent
+    sessionPool.send(message).get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void destroy() {
+    sessionPool.close();
+    try {
+      webSocketClient.stop();
+      httpClient.stop();
+    } catch (Exception e) {
+      logger.warning("Error stopping websocket client: " + e.getMessage());
+    }
   }
 
   /**
@@ -16,10 +16,12 @@
 
 package com.example.flexible.websocket.jettynative;
 
-import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
@@ -31,31 +33,63 @@ import org.eclipse.jetty.websocket.api.annotations.WebSocket;
  */
 @WebSocket(maxTextMessageSize = 64 * 1024)
 public class ServerSocket {
-  private Logger logger = Logger.getLogger(SendServlet.class.getName());
+  private static Logger logger = Logger.getLogger(SendServlet.class.getName());
+  // All connected browser sessions, for broadcast.
+  private static Set<Session> sessions = ConcurrentHashMap.newKeySet();
   private Session session;
 
   @OnWebSocketConnect
   public void onWebSocketConnect(Session session) {
     this.session = session;
+    // The sessions pooled by SendServlet only need their own messages echoed back.
+    if (!session.getUpgradeRequest().getParameterMap()
+        .containsKey(ClientSessionPool.POOLED_SESSION_PARAM)) {
+      sessions.add(session);
+    }
     logger.fine("Socket Connected: " + session);
   }
 
   @OnWebSocketMessage
   public void onWebSocketText(String message) {
     logger.fine("Received message: " + message);
-    try {
-      // echo message back to client
-      this.session.getRemote().sendString(message);
-    } catch (IOException e) {
-      logger.severe("Error echoing message: " + e.getMessage());
-    }
+    // echo message back to client, without waiting for it to be written
+    send(this.session, message);
   }
 
   @OnWebSocketClose
   public void onWebSocketClose(int statusCode, String reason) {
+    sessions.remove(this.session);
     logger.fine("Socket Closed: [" + statusCode + "] " + reason);
   }
 
+  /**
+   * Sends a message to every connected session. Messages are queued on each session and written
+   * asynchronously, so a slow client does not hold up the others.
+   */
+  public static void broadcast(String message) {
+    for (Session session : sessions) {
+      send(session, message);
+    }
+  }
+
+  private static void send(Session session, String message) {
+    session
+        .getRemote()
+        .sendString(
+            message,
+            new WriteCallback() {
+              @Override
+              public void writeFailed(Throwable cause) {
+                logger.severe("Error sending message: " + cause.getMessage());
+                sessions.remove(session);
+                session.close();
+              }
+
+              @Override
+              public void writeSuccess() {}
+            });
+  }
+
   @OnWebSocketError
   public void onWebSocketError(Throwable cause) {
     logger.severe("Websocket error : " + cause.getMessage());
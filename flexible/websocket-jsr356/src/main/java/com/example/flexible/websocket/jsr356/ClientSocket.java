@@ -17,11 +17,13 @@
 package com.example.flexible.websocket.jsr356;
 
 import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import javax.websocket.ClientEndpoint;
 import javax.websocket.CloseReason;
@@ -88,13 +90,21 @@ public class ClientSocket {
     logger.fine("Closing Web Socket: " + reason.getReasonPhrase());
   }
 
-  void sendMessage(String str) {
+  /** Sends a message to the server. The future completes once the message is sent. */
+  Future<Void> sendMessage(String str) {
+    logger.fine("Sending message : " + str);
+    return session.getAsyncRemote().sendText(str);
+  }
+
+  boolean isOpen() {
+    return session.isOpen();
+  }
+
+  void close() {
     try {
-      // Send a message to the server
-      logger.fine("Sending message : " + str);
-      session.getAsyncRemote().sendText(str);
-    } catch (Exception e) {
-      logger.severe("Error sending message : " + e.getMessage());
+      session.close();
+    } catch (IOException e) {
+      logger.severe("Error closing session : " + e.getMessage());
     }
   }
 
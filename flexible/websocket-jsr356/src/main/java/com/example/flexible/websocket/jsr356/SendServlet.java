@@ -19,7 +19,8 @@ package com.example.flexible.websocket.jsr356;
 import com.google.common.base.Preconditions;
 import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -31,25 +32,54 @@ import org.eclipse.jetty.http.HttpStatus;
 /** Servlet that converts the message sent over POST to be over websocket. */
 public class SendServlet extends HttpServlet {
 
+  // Number of websocket clients kept open to the server.
+  private static final int CLIENT_POOL_SIZE = 4;
+  private static final long SEND_TIMEOUT_SECONDS = 10;
+
   private Logger logger = Logger.getLogger(SendServlet.class.getName());
   private final String webSocketAddress = ServerSocket.getWebSocketAddress();
-  private ClientSocket clientSocket;
+  private final ClientSocket[] clientSockets = new ClientSocket[CLIENT_POOL_SIZE];
+  private final AtomicInteger nextClient = new AtomicInteger();
 
-  private void initializeWebSocket() throws Exception {
-    clientSocket = new ClientSocket(new URI(webSocketAddress));
+  private ClientSocket initializeWebSocket() throws Exception {
+    ClientSocket clientSocket = new ClientSocket(new URI(webSocketAddress));
     clientSocket.waitOnOpen();
     logger.info("REST service: open websocket client at " + webSocketAddress);
+    return clientSocket;
   }
 
-  private void sendMessageOverWebSocket(String message) throws Exception {
-    if (clientSocket == null) {
-      try {
-        initializeWebSocket();
-      } catch (URISyntaxException e) {
-        e.printStackTrace();
+  // Returns an open client from the pool, opening a new one in place of a closed one.
+  private ClientSocket getClientSocket() throws Exception {
+    int slot = Math.floorMod(nextClient.getAndIncrement(), CLIENT_POOL_SIZE);
+    synchronized (clientSockets) {
+      ClientSocket clientSocket = clientSockets[slot];
+      if (clientSocket != null && clientSocket.isOpen()) {
+        return clientSocket;
+      }
+    }
+    // Connect outside the lock, so sends over the other clients are not held up.
+    ClientSocket clientSocket = initializeWebSocket();
+    synchronized (clientSockets) {
+      ClientSocket current = clientSockets[slot];
+      if (current != null && current.isOpen()) {
+        // Another request reopened this client first.
+        clientSocket.close();
+        return current;
       }
+      clientSockets[slot] = clientSocket;
+      return clientSocket;
+    }
+  }
+
+  private void sendMessageOverWebSocket(String message) throws Exception {
+    ClientSocket clientSocket = getClientSocket();
+    try {
+      clientSocket.sendMessage(message).get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (Exception e) {
+      // Replace this client on its next use.
+      clientSocket.close();
+      throw e;
     }
-    clientSocket.sendMessage(message);
   }
 
   @Override
@@ -64,4 +94,15 @@ public class SendServlet extends HttpServlet {
       response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
     }
   }
+
+  @Override
+  public void destroy() {
+    synchronized (clientSockets) {
+      for (ClientSocket clientSocket : clientSockets) {
+        if (clientSocket != null) {
+          clientSocket.close();
+        }
+      }
+    }
+  }
 }
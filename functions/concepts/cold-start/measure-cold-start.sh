@@ -0,0 +1,84 @@
+#!/bin/bash
+# Copyright 2021 Google LLC
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Creates a class data sharing (AppCDS) archive from a training run of a function in the
+# Functions Framework invoker, then compares the function's cold-start time with and without it.
+#
+# Usage: ./measure-cold-start.sh [function target] [runs]
+# Run it from the directory of the function's pom.xml.
+
+set -euo pipefail
+
+TARGET="${1:-functions.ColdStart}"
+RUNS="${2:-5}"
+PORT="${PORT:-8080}"
+INVOKER_VERSION="1.0.2"
+
+WORK_DIR="target/cold-start"
+INVOKER_JAR="$WORK_DIR/java-function-invoker-$INVOKER_VERSION.jar"
+CLASS_LIST="$WORK_DIR/classes.lst"
+ARCHIVE="$WORK_DIR/app.jsa"
+FUNCTION_CLASSPATH="target/classes:target/dependency/*"
+
+mkdir -p "$WORK_DIR"
+mvn -q package dependency:copy-dependencies -DskipTests -DincludeScope=runtime
+mvn -q dependency:copy \
+  -Dartifact="com.google.cloud.functions.invoker:java-function-invoker:$INVOKER_VERSION" \
+  -DoutputDirectory="$WORK_DIR"
+
+# Starts the function with the given JVM options, and prints the milliseconds until it has
+# answered its first request.
+time_cold_start() {
+  local start end pid
+  start=$(date +%s%N)
+  java "$@" -cp "$INVOKER_JAR" com.google.cloud.functions.invoker.runtime.Invoker \
+    --classpath "$FUNCTION_CLASSPATH" --target "$TARGET" --port "$PORT" \
+    > "$WORK_DIR/invoker.log" 2>&1 &
+  pid=$!
+  # Any HTTP response will do; only retry while the port is not open yet.
+  until curl -s -o "$WORK_DIR/response.txt" "http://localhost:$PORT/?report=true"; do
+    if ! kill -0 "$pid" 2> /dev/null; then
+      echo "The function exited before answering; see $WORK_DIR/invoker.log" >&2
+      exit 1
+    fi
+    sleep 0.01
+  done
+  end=$(date +%s%N)
+  kill "$pid"
+  wait "$pid" || true
+  echo $(( (end - start) / 1000000 ))
+}
+
+# Prints the average of the cold-start times of several runs.
+average_cold_start() {
+  local total=0
+  for _ in $(seq "$RUNS"); do
+    total=$(( total + $(time_cold_start "$@") ))
+  done
+  echo $(( total / RUNS ))
+}
+
+echo "Training run of $TARGET..."
+time_cold_start -Xshare:off -XX:DumpLoadedClassList="$CLASS_LIST" > /dev/null
+java -Xshare:dump -XX:SharedClassListFile="$CLASS_LIST" -XX:SharedArchiveFile="$ARCHIVE" \
+  -cp "$INVOKER_JAR" > "$WORK_DIR/dump.log" 2>&1
+echo "Created $ARCHIVE from $(wc -l < "$CLASS_LIST") loaded classes"
+
+echo "Without archive: $(average_cold_start -Xshare:auto) ms (average of $RUNS runs)"
+echo "With archive:    $(average_cold_start -Xshare:on -XX:SharedArchiveFile="$ARCHIVE") ms"
+
+echo
+echo "Last response:"
+cat "$WORK_DIR/response.txt"
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package functions;
+
+import com.google.cloud.functions.HttpFunction;
+import com.google.cloud.functions.HttpRequest;
+import com.google.cloud.functions.HttpResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * The lazy-fields sample with its initializers profiled: the eager one is timed at cold
+ * start, the lazy one during the first invocation that needs it. Wrap the static initializers
+ * and client constructions of another function the same way to find out which of them are worth
+ * making lazy.
+ */
+public class ColdStart implements HttpFunction {
+  // Always initialized (at cold-start)
+  private static final int NON_LAZY_GLOBAL =
+      StartupProfiler.time("ColdStart.NON_LAZY_GLOBAL", ColdStart::fileWideComputation);
+
+  // Only initialized if/when the function executes
+  private static class LazyGlobalHolder {
+    private LazyGlobalHolder() {}
+
+    private static final Integer INSTANCE =
+        StartupProfiler.time(
+            "ColdStart.LazyGlobalHolder.INSTANCE", ColdStart::functionSpecificComputation);
+  }
+
+  @Override
+  public void service(HttpRequest request, HttpResponse response)
+      throws IOException {
+    StartupProfiler.invocationStarted();
+    try {
+      Integer lazyGlobal = LazyGlobalHolder.INSTANCE;
+
+      var writer = new PrintWriter(response.getWriter());
+      writer.printf("Lazy global: %s; non-lazy global: %s%n", lazyGlobal, NON_LAZY_GLOBAL);
+      if (request.getFirstQueryParameter("report").isPresent()) {
+        writer.print(StartupProfiler.report());
+      }
+      writer.flush();
+    } finally {
+      StartupProfiler.invocationFinished();
+    }
+  }
+
+  private static int functionSpecificComputation() {
+    int[] numbers = new int[] {1, 2, 3, 4, 5, 6, 7, 8, 9};
+    return Arrays.stream(numbers).sum();
+  }
+
+  private static int fileWideComputation() {
+    int[] numbers = new int[] {1, 2, 3, 4, 5, 6, 7, 8, 9};
+    return Arrays.stream(numbers).reduce((t, x) -> t * x).getAsInt();
+  }
+}
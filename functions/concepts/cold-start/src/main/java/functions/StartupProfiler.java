@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package functions;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Records what a function instance spends its cold start on: the time from JVM start to the first
+ * invocation, and the time taken by each static initializer or client construction wrapped in
+ * {@link #time}, whether it ran at class loading or lazily during the first invocation.
+ *
+ * <p>The report is logged once, when the first invocation finishes.
+ */
+public final class StartupProfiler {
+  private static final Logger logger = Logger.getLogger(StartupProfiler.class.getName());
+
+  private static final Map<String, Long> initNanos = new LinkedHashMap<>();
+  private static final AtomicBoolean started = new AtomicBoolean();
+  private static final AtomicBoolean reported = new AtomicBoolean();
+  private static volatile long firstInvocationUptimeMillis = -1;
+  private static volatile long firstInvocationStartNanos;
+  private static volatile long firstInvocationNanos = -1;
+
+  private StartupProfiler() {}
+
+  /** Runs an initializer, such as the right-hand side of a static field, and records its time. */
+  public static <T> T time(String name, Supplier<T> initializer) {
+    long start = System.nanoTime();
+    try {
+      return initializer.get();
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      synchronized (initNanos) {
+        initNanos.merge(name, elapsed, Long::sum);
+      }
+    }
+  }
+
+  /** Call at the start of every invocation. */
+  public static void invocationStarted() {
+    if (started.compareAndSet(false, true)) {
+      firstInvocationStartNanos = System.nanoTime();
+      firstInvocationUptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+  }
+
+  /** Call when every invocation finishes; logs the report after the first one. */
+  public static void invocationFinished() {
+    if (started.get() && reported.compareAndSet(false, true)) {
+      firstInvocationNanos = System.nanoTime() - firstInvocationStartNanos;
+      logger.info(report());
+    }
+  }
+
+  /** Returns the cold-start report, with what has been recorded so far. */
+  public static String report() {
+    RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+    StringBuilder report = new StringBuilder();
+    report.append(
+        String.format(
+            "Cold start: %d ms from JVM start to first invocation, %d classes loaded, "
+                + "class data sharing archive: %s%n",
+            firstInvocationUptimeMillis,
+            ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount(),
+            sharedArchive(runtime.getInputArguments())));
+    if (firstInvocationNanos >= 0) {
+      report.append(String.format("First invocation: %.1f ms%n", firstInvocationNanos / 1e6));
+    }
+    List<Map.Entry<String, Long>> inits;
+    synchronized (initNanos) {
+      inits = new ArrayList<>(initNanos.entrySet());
+    }
+    for (Map.Entry<String, Long> init : inits) {
+      report.append(String.format("  %s: %.1f ms%n", init.getKey(), init.getValue() / 1e6));
+    }
+    return report.toString();
+  }
+
+  private static String sharedArchive(List<String> jvmArguments) {
+    for (String argument : jvmArguments) {
+      if (argument.startsWith("-XX:SharedArchiveFile=")) {
+        return argument.substring("-XX:SharedArchiveFile=".length());
+      }
+    }
+    return "default";
+  }
+}
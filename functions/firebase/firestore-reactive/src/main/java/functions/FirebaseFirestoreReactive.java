@@ -18,14 +18,12 @@ package functions;
 
 // [START functions_firebase_reactive]
 
+import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.FirestoreOptions;
-import com.google.cloud.firestore.SetOptions;
 import com.google.cloud.functions.Context;
 import com.google.cloud.functions.RawBackgroundFunction;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -34,39 +32,30 @@ import java.util.logging.Logger;
 
 public class FirebaseFirestoreReactive implements RawBackgroundFunction {
 
-  // Use GSON (https://github.com/google/gson) to parse JSON content.
-  private static final Gson gson = new Gson();
-
   private static final Logger logger = Logger.getLogger(FirebaseFirestoreReactive.class.getName());
   private static final Firestore FIRESTORE = FirestoreOptions.getDefaultInstance().getService();
 
-  private final Firestore firestore;
+  private final WriteCoalescer writes;
 
   public FirebaseFirestoreReactive() {
     this(FIRESTORE);
   }
 
   FirebaseFirestoreReactive(Firestore firestore) {
-    this.firestore = firestore;
+    this.writes = new WriteCoalescer(firestore);
   }
 
   @Override
   public void accept(String json, Context context) {
-    // Get the recently-written value
-    JsonObject body = gson.fromJson(json, JsonObject.class);
-    JsonObject tempJson = body.getAsJsonObject("value");
-
-    // Verify that value.fields.original.stringValue exists
-    String currentValue = null;
-    if (tempJson != null) {
-      tempJson = tempJson.getAsJsonObject("fields");
-    }
-    if (tempJson != null) {
-      tempJson = tempJson.getAsJsonObject("original");
-    }
-    if (tempJson != null && tempJson.has("stringValue")) {
-      currentValue = tempJson.get("stringValue").getAsString();
+    // Read the recently-written value and when it was written, without parsing the rest of the
+    // event (such as oldValue, which holds a whole copy of the previous document).
+    WrittenValue written;
+    try {
+      written = WrittenValue.parse(json);
+    } catch (IOException | IllegalStateException e) {
+      throw new IllegalArgumentException("Malformed JSON: " + json, e);
     }
+    String currentValue = written.getOriginal();
     if (currentValue == null) {
       throw new IllegalArgumentException("Malformed JSON: " + json);
     }
@@ -75,16 +64,18 @@ public class FirebaseFirestoreReactive implements RawBackgroundFunction {
     String newValue = currentValue.toUpperCase(Locale.getDefault());
 
     // Update Firestore DB with ALL CAPS value
-    Map<String, String> newFields = Map.of("original", newValue);
+    Map<String, Object> newFields = Map.of("original", newValue);
 
     String affectedDoc = context.resource().split("/documents/")[1].replace("\"", "");
 
     if (!currentValue.equals(newValue)) {
       // The stored value needs to be updated
-      // Write the upper-cased value to Firestore
+      // Write the upper-cased value to Firestore, unless the document was written again since
+      // this event: the newer write triggers its own event, so nothing has to be read here.
       logger.info(String.format("Replacing value: %s --> %s", currentValue, newValue));
+      Timestamp updateTime = written.getUpdateTime();
       try {
-        FIRESTORE.document(affectedDoc).set(newFields, SetOptions.merge()).get();
+        writes.write(affectedDoc, newFields, updateTime);
       } catch (ExecutionException | InterruptedException e) {
         logger.log(Level.SEVERE, "Error updating Firestore document: " + e.getMessage(), e);
       }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package functions;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+import io.grpc.Status;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Writes document updates in batches: updates made while a batch is being committed are queued
+ * and committed together in the next {@link WriteBatch}, and queued updates to the same document
+ * are coalesced so only the one for the most recent event is written.
+ *
+ * <p>An update that carries the update time of the event that caused it is only applied if the
+ * document has not been written since. Updates whose document has changed in the meantime are
+ * dropped, since the newer write triggers an event of its own.
+ */
+final class WriteCoalescer {
+
+  private static final Logger logger = Logger.getLogger(WriteCoalescer.class.getName());
+
+  private static class PendingWrite {
+    private final Map<String, Object> fields;
+    private final Timestamp updateTime;
+
+    PendingWrite(Map<String, Object> fields, Timestamp updateTime) {
+      this.fields = fields;
+      this.updateTime = updateTime;
+    }
+
+    boolean isNewerThan(PendingWrite other) {
+      return updateTime == null
+          || other.updateTime == null
+          || updateTime.compareTo(other.updateTime) >= 0;
+    }
+  }
+
+  private final Firestore firestore;
+  private final Object lock = new Object();
+  private Map<String, PendingWrite> pending = new LinkedHashMap<>();
+  private CompletableFuture<Void> pendingCommitted = new CompletableFuture<>();
+  private boolean committing;
+
+  WriteCoalescer(Firestore firestore) {
+    this.firestore = firestore;
+  }
+
+  /**
+   * Writes the fields to the document and waits until they have been committed.
+   *
+   * @param updateTime the update time of the document version the fields were computed from, or
+   *     {@code null} to write without a precondition
+   */
+  void write(String documentPath, Map<String, Object> fields, Timestamp updateTime)
+      throws ExecutionException, InterruptedException {
+    submit(documentPath, fields, updateTime).get();
+  }
+
+  /**
+   * Queues the fields to be written to the document. If no batch is being committed, the queue is
+   * committed before this returns; otherwise the caller committing the current batch commits it
+   * next. The returned future completes once the write has been committed.
+   */
+  CompletableFuture<Void> submit(
+      String documentPath, Map<String, Object> fields, Timestamp updateTime) {
+    PendingWrite write = new PendingWrite(fields, updateTime);
+    CompletableFuture<Void> committed;
+    synchronized (lock) {
+      PendingWrite queued = pending.get(documentPath);
+      if (queued == null || write.isNewerThan(queued)) {
+        pending.put(documentPath, write);
+      }
+      committed = pendingCommitted;
+    }
+    commitPending();
+    return committed;
+  }
+
+  // Commits queued writes until there are none left, unless another caller is already doing so.
+  private void commitPending() {
+    while (true) {
+      Map<String, PendingWrite> writes;
+      CompletableFuture<Void> committed;
+      synchronized (lock) {
+        if (committing || pending.isEmpty()) {
+          return;
+        }
+        committing = true;
+        writes = pending;
+        committed = pendingCommitted;
+        pending = new LinkedHashMap<>();
+        pendingCommitted = new CompletableFuture<>();
+      }
+      try {
+        commit(writes);
+        committed.complete(null);
+      } catch (ExecutionException | RuntimeException e) {
+        committed.completeExceptionally(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        committed.completeExceptionally(e);
+      } finally {
+        synchronized (lock) {
+          committing = false;
+        }
+      }
+    }
+  }
+
+  private void commit(Map<String, PendingWrite> writes)
+      throws ExecutionException, InterruptedException {
+    WriteBatch batch = firestore.batch();
+    for (Map.Entry<String, PendingWrite> entry : writes.entrySet()) {
+      add(batch, entry.getKey(), entry.getValue());
+    }
+    try {
+      batch.commit().get();
+    } catch (ExecutionException e) {
+      if (!isFailedPrecondition(e) || writes.size() == 1) {
+        rethrowUnlessFailedPrecondition(e);
+        return;
+      }
+      // A batch is atomic, so one outdated document fails them all: retry them one at a time.
+      for (Map.Entry<String, PendingWrite> entry : writes.entrySet()) {
+        WriteBatch single = firestore.batch();
+        add(single, entry.getKey(), entry.getValue());
+        try {
+          single.commit().get();
+        } catch (ExecutionException singleError) {
+          rethrowUnlessFailedPrecondition(singleError);
+        }
+      }
+    }
+  }
+
+  private void add(WriteBatch batch, String documentPath, PendingWrite write) {
+    DocumentReference document = firestore.document(documentPath);
+    if (write.updateTime == null) {
+      batch.set(document, write.fields, SetOptions.merge());
+    } else {
+      batch.update(document, write.fields, Precondition.updatedAt(write.updateTime));
+    }
+  }
+
+  private static void rethrowUnlessFailedPrecondition(ExecutionException e)
+      throws ExecutionException {
+    if (!isFailedPrecondition(e)) {
+      throw e;
+    }
+    logger.info("Document changed since the event was sent; skipping update.");
+  }
+
+  private static boolean isFailedPrecondition(ExecutionException e) {
+    Throwable cause = e.getCause();
+    if (cause instanceof ApiException) {
+      return ((ApiException) cause).getStatusCode().getCode()
+          == StatusCode.Code.FAILED_PRECONDITION;
+    }
+    if (cause instanceof FirestoreException) {
+      Status status = ((FirestoreException) cause).getStatus();
+      return status != null && status.getCode() == Status.Code.FAILED_PRECONDITION;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package functions;
+
+import com.google.cloud.Timestamp;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.StringReader;
+
+/** The value of the "original" field of a document written in a Firestore event. */
+final class WrittenValue {
+  private String original;
+  private String updateTime;
+
+  private WrittenValue() {}
+
+  /** Returns the written string value of the field, or null if the event has none. */
+  String getOriginal() {
+    return original;
+  }
+
+  /** Returns when the document was written, or null if the event doesn't say. */
+  Timestamp getUpdateTime() {
+    return updateTime == null ? null : Timestamp.parseTimestamp(updateTime);
+  }
+
+  /**
+   * Reads value.fields.original.stringValue and value.updateTime from a Firestore event, skipping
+   * over every other part of it.
+   */
+  static WrittenValue parse(String json) throws IOException {
+    WrittenValue written = new WrittenValue();
+    try (JsonReader reader = new JsonReader(new StringReader(json))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (!reader.nextName().equals("value") || reader.peek() != JsonToken.BEGIN_OBJECT) {
+          reader.skipValue();
+          continue;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String name = reader.nextName();
+          if (name.equals("updateTime") && reader.peek() == JsonToken.STRING) {
+            written.updateTime = reader.nextString();
+          } else if (name.equals("fields") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+            written.original = readField(reader, "original");
+          } else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+      }
+      reader.endObject();
+    }
+    return written;
+  }
+
+  // Reads a Firestore fields map, returning the stringValue of the named field.
+  private static String readField(JsonReader reader, String field) throws IOException {
+    String stringValue = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (!reader.nextName().equals(field) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+        reader.skipValue();
+        continue;
+      }
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (reader.nextName().equals("stringValue") && reader.peek() == JsonToken.STRING) {
+          stringValue = reader.nextString();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+    reader.endObject();
+    return stringValue;
+  }
+}
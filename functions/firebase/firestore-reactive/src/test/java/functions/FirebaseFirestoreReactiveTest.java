@@ -17,14 +17,20 @@
 package functions;
 
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.api.core.ApiFutures;
+import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.DocumentReference;
 import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.WriteBatch;
 import com.google.common.testing.TestLogHandler;
 import com.google.common.truth.Truth;
 import com.google.gson.Gson;
 import functions.eventpojos.MockContext;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 import org.junit.After;
@@ -42,6 +48,7 @@ public class FirebaseFirestoreReactiveTest {
 
   @Mock private Firestore firestoreMock;
   @Mock private DocumentReference referenceMock;
+  @Mock private WriteBatch batchMock;
 
   // Loggers + handlers for various tested classes
   // (Must be declared at class-level, or LoggingHandler won't detect log records!)
@@ -63,6 +70,8 @@ public class FirebaseFirestoreReactiveTest {
     when(referenceMock.set(any())).thenReturn(null);
 
     when(firestoreMock.document(any())).thenReturn(referenceMock);
+    when(firestoreMock.batch()).thenReturn(batchMock);
+    when(batchMock.commit()).thenReturn(ApiFutures.immediateFuture(List.of()));
 
     LOG_HANDLER.clear();
   }
@@ -77,7 +86,8 @@ public class FirebaseFirestoreReactiveTest {
   public void functionsFirebaseReactive_shouldCapitalizeOriginalValue()  {
 
     String jsonStr = gson.toJson(Map.of("value",
-        Map.of("fields",
+        Map.of("updateTime", "2021-03-04T05:06:07.123456Z",
+            "fields",
             Map.of("original",
                 Map.of("stringValue", "foo")))));
 
@@ -90,6 +100,13 @@ public class FirebaseFirestoreReactiveTest {
 
     Truth.assertThat(LOG_HANDLER.getStoredLogRecords().get(0).getMessage()).isEqualTo(
         "Replacing value: foo --> FOO");
+    // The write only applies if the document hasn't changed since the event
+    verify(batchMock).update(
+        referenceMock,
+        Map.of("original", "FOO"),
+        Precondition.updatedAt(Timestamp.parseTimestamp("2021-03-04T05:06:07.123456Z")));
+    verify(batchMock).commit();
+    Truth.assertThat(LOG_HANDLER.getStoredLogRecords()).hasSize(1);
   }
 
   @Test
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package functions;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiException;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import com.google.common.truth.Truth;
+import io.grpc.Status;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class WriteCoalescerTest {
+  private static final Timestamp TIME_1 = Timestamp.ofTimeSecondsAndNanos(1000, 0);
+  private static final Timestamp TIME_2 = Timestamp.ofTimeSecondsAndNanos(2000, 0);
+  private static final Timestamp TIME_3 = Timestamp.ofTimeSecondsAndNanos(3000, 0);
+
+  private final Firestore firestore = mock(Firestore.class);
+  private final DocumentReference docA = mock(DocumentReference.class);
+  private final DocumentReference docB = mock(DocumentReference.class);
+  private final DocumentReference docC = mock(DocumentReference.class);
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private WriteCoalescer coalescer;
+
+  @Before
+  public void setUp() {
+    when(firestore.document("messages/a")).thenReturn(docA);
+    when(firestore.document("messages/b")).thenReturn(docB);
+    when(firestore.document("messages/c")).thenReturn(docC);
+    coalescer = new WriteCoalescer(firestore);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void writesAreQueuedWhileABatchCommits_andCoalescedPerDocument() throws Exception {
+    SettableApiFuture<List<WriteResult>> firstCommit = SettableApiFuture.create();
+    WriteBatch first = batchCommitting(firstCommit);
+    WriteBatch second = batchCommitting(ApiFutures.immediateFuture(List.of()));
+    when(firestore.batch()).thenReturn(first, second);
+
+    Future<?> writeA = startWriteWhileCommitting("messages/a", "A", TIME_1, first);
+    CompletableFuture<Void> olderB = coalescer.submit("messages/b", fields("B2"), TIME_2);
+    CompletableFuture<Void> newerB = coalescer.submit("messages/b", fields("B3"), TIME_3);
+    Truth.assertThat(olderB.isDone()).isFalse();
+
+    firstCommit.set(List.of());
+    writeA.get(5, TimeUnit.SECONDS);
+    olderB.get(5, TimeUnit.SECONDS);
+    newerB.get(5, TimeUnit.SECONDS);
+
+    // Both writes to messages/b went out in the second batch, as the one for the newer event
+    verify(second).update(docB, fields("B3"), Precondition.updatedAt(TIME_3));
+    verify(second, never()).update(eq(docB), eq(fields("B2")), any(Precondition.class));
+    verify(second).commit();
+  }
+
+  @Test
+  public void failedPreconditionRetriesEachDocumentAlone() throws Exception {
+    SettableApiFuture<List<WriteResult>> firstCommit = SettableApiFuture.create();
+    WriteBatch first = batchCommitting(firstCommit);
+    WriteBatch combined = batchCommitting(ApiFutures.immediateFailedFuture(failedPrecondition()));
+    WriteBatch onlyB = batchCommitting(ApiFutures.immediateFuture(List.of()));
+    WriteBatch onlyC = batchCommitting(ApiFutures.immediateFailedFuture(failedPrecondition()));
+    when(firestore.batch()).thenReturn(first, combined, onlyB, onlyC);
+
+    Future<?> writeA = startWriteWhileCommitting("messages/a", "A", TIME_1, first);
+    CompletableFuture<Void> writeB = coalescer.submit("messages/b", fields("B"), TIME_2);
+    CompletableFuture<Void> writeC = coalescer.submit("messages/c", fields("C"), TIME_2);
+
+    firstCommit.set(List.of());
+    writeA.get(5, TimeUnit.SECONDS);
+    // The outdated write to messages/c is dropped without failing the one to messages/b
+    writeB.get(5, TimeUnit.SECONDS);
+    writeC.get(5, TimeUnit.SECONDS);
+
+    verify(combined).update(docB, fields("B"), Precondition.updatedAt(TIME_2));
+    verify(combined).update(docC, fields("C"), Precondition.updatedAt(TIME_2));
+    verify(onlyB).update(docB, fields("B"), Precondition.updatedAt(TIME_2));
+    verify(onlyB).commit();
+    verify(onlyC).update(docC, fields("C"), Precondition.updatedAt(TIME_2));
+    verify(onlyC).commit();
+  }
+
+  @Test
+  public void otherErrorsFailTheWrite() throws Exception {
+    WriteBatch batch =
+        batchCommitting(ApiFutures.immediateFailedFuture(new IllegalStateException("boom")));
+    when(firestore.batch()).thenReturn(batch);
+
+    CompletableFuture<Void> write = coalescer.submit("messages/a", fields("A"), TIME_1);
+
+    Truth.assertThat(write.isCompletedExceptionally()).isTrue();
+  }
+
+  // Starts a write on another thread, and waits until it is committing the given batch.
+  private Future<?> startWriteWhileCommitting(
+      String documentPath, String value, Timestamp updateTime, WriteBatch batch) {
+    Future<?> write =
+        executor.submit(
+            () -> {
+              coalescer.write(documentPath, fields(value), updateTime);
+              return null;
+            });
+    verify(batch, timeout(5000)).commit();
+    return write;
+  }
+
+  private static WriteBatch batchCommitting(ApiFuture<List<WriteResult>> result) {
+    WriteBatch batch = mock(WriteBatch.class);
+    when(batch.commit()).thenReturn(result);
+    return batch;
+  }
+
+  private static Map<String, Object> fields(String original) {
+    return Map.of("original", original);
+  }
+
+  private static ApiException failedPrecondition() {
+    return new ApiException(
+        new RuntimeException("stale"),
+        GrpcStatusCode.of(Status.Code.FAILED_PRECONDITION),
+        false);
+  }
+}
@@ -18,20 +18,65 @@ package functions;
 
 // [START functions_http_form_data]
 
+import com.google.cloud.WriteChannel;
 import com.google.cloud.functions.HttpFunction;
 import com.google.cloud.functions.HttpRequest;
 import com.google.cloud.functions.HttpResponse;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
 import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
 import java.net.HttpURLConnection;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.logging.Logger;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.UploadContext;
+import org.apache.commons.fileupload.util.Streams;
 
 public class HttpFormData implements HttpFunction {
   private static final Logger logger = Logger.getLogger(HttpFormData.class.getName());
 
+  // Upload files to this bucket if set; otherwise only log their digests.
+  private static final String UPLOAD_BUCKET = System.getenv("UPLOAD_BUCKET");
+  // Total size of the files a single request may upload
+  private static final long MAX_REQUEST_BYTES =
+      Long.parseLong(System.getenv().getOrDefault("MAX_REQUEST_BYTES", "33554432"));
+  static final int BUFFER_SIZE = 64 * 1024;
+  // Cloud Storage upload chunk size; must be a multiple of 256 KiB
+  private static final int CHUNK_SIZE = 2 * 1024 * 1024;
+
+  /** Destination for the content of uploaded files, which is written to it as it arrives. */
+  interface PartSink {
+    // The channel is only closed once the whole file was written, so a file that was cut short
+    // is never completed.
+    WritableByteChannel open(String fileName, String contentType) throws IOException;
+  }
+
+  private final PartSink sink;
+  private final long maxRequestBytes;
+
+  public HttpFormData() {
+    this(
+        UPLOAD_BUCKET == null ? DigestChannel::new : storageSink(UPLOAD_BUCKET),
+        MAX_REQUEST_BYTES);
+  }
+
+  HttpFormData(PartSink sink, long maxRequestBytes) {
+    this.sink = sink;
+    this.maxRequestBytes = maxRequestBytes;
+  }
+
   @Override
   public void service(HttpRequest request, HttpResponse response)
       throws IOException {
@@ -42,28 +87,65 @@ public class HttpFormData implements HttpFunction {
     }
 
     // This code will process each file uploaded.
-    String tempDirectory = System.getProperty("java.io.tmpdir");
-    for (HttpRequest.HttpPart httpPart : request.getParts().values()) {
-      String filename = httpPart.getFileName().orElse(null);
-      if (filename == null) {
-        continue;
-      }
-
-      logger.info("Processed file: " + filename);
+    // Note: request.getParts() saves every file to GCF's temp directory, an in-memory file
+    // system, before the function runs. Parsing the request body as it arrives instead streams
+    // each file through a small buffer, so memory use doesn't grow with the size of the upload.
+    FileItemIterator parts;
+    try {
+      parts = new FileUpload().getItemIterator(new RequestUploadContext(request));
+    } catch (FileUploadException e) {
+      logger.warning("Invalid multipart request: " + e.getMessage());
+      response.setStatusCode(HttpURLConnection.HTTP_BAD_REQUEST);
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    long totalBytes = 0;
+    try {
+      while (parts.hasNext()) {
+        FileItemStream part = parts.next();
+        if (part.isFormField()) {
+          String value = Streams.asString(part.openStream(), StandardCharsets.UTF_8.name());
 
-      // Note: GCF's temp directory is an in-memory file system
-      // Thus, any files in it must fit in the instance's memory.
-      Path filePath = Paths.get(tempDirectory, filename).toAbsolutePath();
+          // TODO(developer): process form field values here
+          logger.info(String.format(
+              "Processed field: %s (value: %s)", part.getFieldName(), value));
+          continue;
+        }
+        String filename = part.getName();
+        if (filename == null || filename.isEmpty()) {
+          continue;
+        }
 
-      // Note: files saved to a GCF instance itself may not persist across executions.
-      // Persistent files should be stored elsewhere, e.g. a Cloud Storage bucket.
-      Files.copy(httpPart.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Processed file: " + filename);
 
-      // TODO(developer): process saved files here
-      Files.delete(filePath);
+        // Note: files saved to a GCF instance itself may not persist across executions.
+        // Persistent files should be stored elsewhere, e.g. the UPLOAD_BUCKET Cloud Storage bucket.
+        try (ReadableByteChannel in = Channels.newChannel(part.openStream())) {
+          WritableByteChannel out = sink.open(filename, part.getContentType());
+          for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            totalBytes += read;
+            if (totalBytes > maxRequestBytes) {
+              // Leave the channel open, so the sink doesn't complete a truncated file
+              logger.warning("Uploaded files exceed " + maxRequestBytes + " bytes");
+              response.setStatusCode(HttpURLConnection.HTTP_ENTITY_TOO_LARGE);
+              return;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+              out.write(buffer);
+            }
+            buffer.clear();
+          }
+          out.close();
+        }
+      }
+    } catch (FileUploadException e) {
+      logger.warning("Invalid multipart request: " + e.getMessage());
+      response.setStatusCode(HttpURLConnection.HTTP_BAD_REQUEST);
+      return;
     }
 
-    // This code will process other form fields.
+    // This code will process query parameters.
     request.getQueryParameters().forEach(
         (fieldName, fieldValues) -> {
           String firstFieldValue = fieldValues.get(0);
@@ -73,5 +155,99 @@ public class HttpFormData implements HttpFunction {
               "Processed field: %s (value: %s)", fieldName, firstFieldValue));
         });
   }
+
+  // Uploads each file with a resumable upload, so that only one chunk of it is held in memory
+  private static PartSink storageSink(String bucket) {
+    Storage storage = StorageOptions.getDefaultInstance().getService();
+    return (fileName, contentType) -> {
+      WriteChannel writer =
+          storage.writer(BlobInfo.newBuilder(bucket, fileName).setContentType(contentType).build());
+      writer.setChunkSize(CHUNK_SIZE);
+      return writer;
+    };
+  }
+
+  // Logs the SHA-256 digest and size of a file, without storing it anywhere
+  static class DigestChannel implements WritableByteChannel {
+    private final String fileName;
+    private final MessageDigest digest;
+    private long size;
+    private String hexDigest;
+
+    DigestChannel(String fileName, String contentType) {
+      this.fileName = fileName;
+      try {
+        digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        // Every Java platform implements SHA-256
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+      int written = src.remaining();
+      digest.update(src);
+      size += written;
+      return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return hexDigest == null;
+    }
+
+    @Override
+    public void close() {
+      if (hexDigest != null) {
+        return;
+      }
+      hexDigest = String.format("%064x", new BigInteger(1, digest.digest()));
+      logger.info(String.format("SHA-256 of %s (%d bytes): %s", fileName, size, hexDigest));
+    }
+
+    long size() {
+      return size;
+    }
+
+    String hexDigest() {
+      return hexDigest;
+    }
+  }
+
+  // Lets FileUpload read the multipart body straight from the request
+  private static class RequestUploadContext implements UploadContext {
+    private final HttpRequest request;
+
+    RequestUploadContext(HttpRequest request) {
+      this.request = request;
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+      return request.getCharacterEncoding().orElse(null);
+    }
+
+    @Override
+    public String getContentType() {
+      return request.getContentType().orElse(null);
+    }
+
+    @Override
+    public long contentLength() {
+      return request.getContentLength();
+    }
+
+    @Override
+    @Deprecated
+    public int getContentLength() {
+      return (int) Math.min(request.getContentLength(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return request.getInputStream();
+    }
+  }
 }
 // [END functions_http_form_data]
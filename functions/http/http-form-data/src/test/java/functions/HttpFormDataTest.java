@@ -17,24 +17,29 @@
 package functions;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.cloud.functions.HttpRequest;
-import com.google.cloud.functions.HttpRequest.HttpPart;
 import com.google.cloud.functions.HttpResponse;
 import com.google.common.testing.TestLogHandler;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.io.StringWriter;
 import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -53,6 +58,8 @@ public class HttpFormDataTest {
   private BufferedWriter writerOut;
   private StringWriter responseOut;
 
+  private static final String BOUNDARY = "----formdataboundary";
+
   private static final Logger logger = Logger.getLogger(HttpFormData.class.getName());
   private static final TestLogHandler logHandler = new TestLogHandler();
 
@@ -85,15 +92,10 @@ public class HttpFormDataTest {
   @Test
   public void functionsHttpFormData_shouldSaveFiles() throws IOException {
     when(request.getMethod()).thenReturn("POST");
-
-    InputStream stream = new ByteArrayInputStream("foo text%n".getBytes(StandardCharsets.UTF_8));
-
-    MockHttpPart mockHttpPart = new MockHttpPart();
-    mockHttpPart.setFileName("foo.txt");
-    mockHttpPart.setInputStream(stream);
-
-    Map<String, HttpPart> httpParts = Map.of("mock", mockHttpPart);
-    when(request.getParts()).thenReturn(httpParts);
+    mockBody(
+        fileHeader("foo.txt")
+            + "foo text%n\r\n"
+            + "--" + BOUNDARY + "--\r\n");
 
     new HttpFormData().service(request, response);
 
@@ -104,7 +106,7 @@ public class HttpFormDataTest {
   @Test
   public void functionsHttpFormData_shouldProcessFields() throws IOException {
     when(request.getMethod()).thenReturn("POST");
-    when(request.getParts()).thenReturn(Map.of());
+    mockBody("--" + BOUNDARY + "--\r\n");
 
     Map<String, List<String>> queryParams = Map.of("foo", List.of("bar"));
 
@@ -116,4 +118,141 @@ public class HttpFormDataTest {
     assertThat(logHandler.getStoredLogRecords().get(0).getMessage()).isEqualTo(
         "Processed field: foo (value: bar)");
   }
+
+  @Test
+  public void functionsHttpFormData_shouldProcessFormFields() throws IOException {
+    when(request.getMethod()).thenReturn("POST");
+    mockBody(
+        "--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"foo\"\r\n\r\n"
+            + "bar\r\n"
+            + "--" + BOUNDARY + "--\r\n");
+
+    new HttpFormData().service(request, response);
+
+    assertThat(logHandler.getStoredLogRecords().get(0).getMessage()).isEqualTo(
+        "Processed field: foo (value: bar)");
+  }
+
+  @Test
+  public void functionsHttpFormData_shouldRejectOtherContentTypes() throws IOException {
+    when(request.getMethod()).thenReturn("POST");
+    when(request.getContentType()).thenReturn(Optional.of("application/json"));
+    when(request.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+
+    new HttpFormData().service(request, response);
+
+    verify(response, times(1)).setStatusCode(HttpURLConnection.HTTP_BAD_REQUEST);
+  }
+
+  @Test
+  public void functionsHttpFormData_shouldStreamLargeFiles() throws Exception {
+    when(request.getMethod()).thenReturn("POST");
+    // Much larger than the heap the tests run with (see pom.xml)
+    long size = 300L * 1024 * 1024;
+    mockBody(fileBody("large.bin", new PatternInputStream(size)));
+
+    AtomicReference<HttpFormData.DigestChannel> channel = new AtomicReference<>();
+    HttpFormData.PartSink sink =
+        (fileName, contentType) -> {
+          channel.set(new HttpFormData.DigestChannel(fileName, contentType));
+          return channel.get();
+        };
+    new HttpFormData(sink, Long.MAX_VALUE).service(request, response);
+
+    verify(response, never()).setStatusCode(anyInt());
+    assertThat(channel.get().isOpen()).isFalse();
+    assertThat(channel.get().size()).isEqualTo(size);
+
+    MessageDigest expected = MessageDigest.getInstance("SHA-256");
+    byte[] buffer = new byte[HttpFormData.BUFFER_SIZE];
+    InputStream pattern = new PatternInputStream(size);
+    for (int read = pattern.read(buffer); read >= 0; read = pattern.read(buffer)) {
+      expected.update(buffer, 0, read);
+    }
+    StringBuilder expectedHex = new StringBuilder();
+    for (byte b : expected.digest()) {
+      expectedHex.append(String.format("%02x", b));
+    }
+    assertThat(channel.get().hexDigest()).isEqualTo(expectedHex.toString());
+  }
+
+  @Test
+  public void functionsHttpFormData_shouldRejectTooLargeRequests() throws IOException {
+    when(request.getMethod()).thenReturn("POST");
+    mockBody(
+        fileBody("large.bin", new PatternInputStream(HttpFormData.BUFFER_SIZE * 3)));
+
+    AtomicReference<HttpFormData.DigestChannel> channel = new AtomicReference<>();
+    HttpFormData.PartSink sink =
+        (fileName, contentType) -> {
+          channel.set(new HttpFormData.DigestChannel(fileName, contentType));
+          return channel.get();
+        };
+    new HttpFormData(sink, HttpFormData.BUFFER_SIZE).service(request, response);
+
+    verify(response, times(1)).setStatusCode(HttpURLConnection.HTTP_ENTITY_TOO_LARGE);
+    // The incomplete file is never closed, so the sink doesn't keep it
+    assertThat(channel.get().isOpen()).isTrue();
+  }
+
+  private void mockBody(String body) throws IOException {
+    mockBody(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private void mockBody(InputStream body) throws IOException {
+    when(request.getContentType())
+        .thenReturn(Optional.of("multipart/form-data; boundary=" + BOUNDARY));
+    when(request.getInputStream()).thenReturn(body);
+  }
+
+  private static String fileHeader(String fileName) {
+    return "--" + BOUNDARY + "\r\n"
+        + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName + "\"\r\n"
+        + "Content-Type: application/octet-stream\r\n\r\n";
+  }
+
+  // A multipart body holding one file, read from the content stream as the body is read
+  private static InputStream fileBody(String fileName, InputStream content) {
+    byte[] header = fileHeader(fileName).getBytes(StandardCharsets.UTF_8);
+    byte[] trailer = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8);
+    return new SequenceInputStream(
+        Collections.enumeration(
+            List.of(
+                new ByteArrayInputStream(header), content, new ByteArrayInputStream(trailer))));
+  }
+
+  // Generates a repeating byte pattern of the given length, without holding it in memory.
+  private static class PatternInputStream extends InputStream {
+    private long remaining;
+
+    PatternInputStream(long length) {
+      this.remaining = length;
+    }
+
+    @Override
+    public int read() {
+      if (remaining == 0) {
+        return -1;
+      }
+      remaining--;
+      return (int) (remaining % 251);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (remaining == 0) {
+        return -1;
+      }
+      int count = (int) Math.min(len, remaining);
+      for (int i = 0; i < count; i++) {
+        remaining--;
+        b[off + i] = (byte) (remaining % 251);
+      }
+      return count;
+    }
+  }
 }
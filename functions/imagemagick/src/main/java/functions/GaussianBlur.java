@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package functions;
+
+import java.awt.image.BufferedImage;
+
+// Gaussian blur in plain Java, used instead of ImageMagick for small images.
+final class GaussianBlur {
+
+  private GaussianBlur() {}
+
+  // Returns a blurred copy of the image. The copy has an alpha channel only if the image has one.
+  static BufferedImage blur(BufferedImage image, double sigma) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    boolean hasAlpha = image.getColorModel().hasAlpha();
+    int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+    float[] kernel = kernel(sigma);
+    int[] rows = new int[pixels.length];
+    // The blur is separable: blur each row, then each column of the result.
+    for (int y = 0; y < height; y++) {
+      blurLine(pixels, rows, y * width, 1, width, kernel);
+    }
+    int[] blurred = new int[pixels.length];
+    for (int x = 0; x < width; x++) {
+      blurLine(rows, blurred, x, width, height, kernel);
+    }
+
+    BufferedImage result =
+        new BufferedImage(
+            width, height, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    result.setRGB(0, 0, width, height, blurred, 0, width);
+    return result;
+  }
+
+  private static float[] kernel(double sigma) {
+    int radius = (int) Math.ceil(sigma * 3);
+    float[] kernel = new float[radius * 2 + 1];
+    float sum = 0;
+    for (int i = -radius; i <= radius; i++) {
+      kernel[i + radius] = (float) Math.exp(-(i * i) / (2 * sigma * sigma));
+      sum += kernel[i + radius];
+    }
+    for (int i = 0; i < kernel.length; i++) {
+      kernel[i] /= sum;
+    }
+    return kernel;
+  }
+
+  // Blurs length pixels starting at offset, stepping by stride; edge pixels are repeated.
+  private static void blurLine(
+      int[] in, int[] out, int offset, int stride, int length, float[] kernel) {
+    int radius = kernel.length / 2;
+    for (int i = 0; i < length; i++) {
+      float a = 0;
+      float r = 0;
+      float g = 0;
+      float b = 0;
+      for (int k = -radius; k <= radius; k++) {
+        int j = Math.min(Math.max(i + k, 0), length - 1);
+        int argb = in[offset + j * stride];
+        float weight = kernel[k + radius];
+        a += weight * (argb >>> 24);
+        r += weight * ((argb >> 16) & 0xff);
+        g += weight * ((argb >> 8) & 0xff);
+        b += weight * (argb & 0xff);
+      }
+      out[offset + i * stride] =
+          (Math.round(a) << 24) | (Math.round(r) << 16) | (Math.round(g) << 8) | Math.round(b);
+    }
+  }
+}
@@ -18,6 +18,8 @@ package functions;
 
 // [START functions_imagemagick_setup]
 
+import com.google.cloud.ReadChannel;
+import com.google.cloud.WriteChannel;
 import com.google.cloud.functions.BackgroundFunction;
 import com.google.cloud.functions.Context;
 import com.google.cloud.storage.Blob;
@@ -35,14 +37,25 @@ import com.google.cloud.vision.v1.ImageAnnotatorClient;
 import com.google.cloud.vision.v1.ImageSource;
 import com.google.cloud.vision.v1.SafeSearchAnnotation;
 import functions.eventpojos.GcsEvent;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
 
 public class ImageMagick implements BackgroundFunction<GcsEvent> {
 
@@ -51,6 +64,33 @@ public class ImageMagick implements BackgroundFunction<GcsEvent> {
   private static final Logger logger = Logger.getLogger(ImageMagick.class.getName());
   // [END functions_imagemagick_setup]
 
+  // Maximum number of ImageMagick processes running at once in this instance.
+  private static final int MAX_CONVERSIONS =
+      Integer.parseInt(
+          System.getenv()
+              .getOrDefault(
+                  "MAX_CONVERSIONS", String.valueOf(Runtime.getRuntime().availableProcessors())));
+  private static final Semaphore CONVERSIONS = new Semaphore(MAX_CONVERSIONS);
+  // Threads that copy downloads into ImageMagick's stdin, one per running conversion. The copy
+  // blocks on I/O, so it must not run on the common ForkJoinPool.
+  private static final ExecutorService STDIN_FEEDERS =
+      Executors.newFixedThreadPool(
+          MAX_CONVERSIONS,
+          runnable -> {
+            Thread thread = new Thread(runnable, "imagemagick-stdin");
+            thread.setDaemon(true);
+            return thread;
+          });
+  // Images up to this size are blurred in Java, without starting a process.
+  private static final long JAVA_BLUR_MAX_BYTES =
+      Long.parseLong(System.getenv().getOrDefault("JAVA_BLUR_MAX_BYTES", "524288"));
+  // Images with up to this many pixels are blurred in Java. Blurring takes about 12 bytes of
+  // memory per pixel, and a small compressed file can still decode to a very large image.
+  private static final long JAVA_BLUR_MAX_PIXELS =
+      Long.parseLong(System.getenv().getOrDefault("JAVA_BLUR_MAX_PIXELS", "1048576"));
+  // Same radius as ImageMagick's "-blur 0x8".
+  private static final double BLUR_SIGMA = 8;
+
   // [START functions_imagemagick_analyze]
   @Override
   // Blurs uploaded images that are flagged as Adult or Violence.
@@ -106,35 +146,131 @@ public class ImageMagick implements BackgroundFunction<GcsEvent> {
     String bucketName = blobInfo.getBucket();
     String fileName = blobInfo.getName();
 
-    // Download image
     Blob blob = storage.get(BlobId.of(bucketName, fileName));
-    Path download = Paths.get("/tmp/", fileName);
-    blob.downloadTo(download);
+    BlobId blurredBlobId = BlobId.of(BLURRED_BUCKET_NAME, fileName);
+    BlobInfo blurredBlobInfo =
+        BlobInfo.newBuilder(blurredBlobId).setContentType(blob.getContentType()).build();
+
+    boolean blurred = false;
+    if (blob.getSize() != null && blob.getSize() <= JAVA_BLUR_MAX_BYTES) {
+      blurred = blurInJava(blob, blurredBlobInfo);
+    }
+    if (!blurred) {
+      blurred = blurWithImageMagick(blob, blurredBlobInfo);
+    }
+    if (blurred) {
+      logger.info(
+          String.format("Blurred image uploaded to: gs://%s/%s", BLURRED_BUCKET_NAME, fileName));
+    }
+  }
 
-    // Construct the command.
-    Path upload = Paths.get("/tmp/", "blurred-" + fileName);
-    List<String> args = List.of("convert", download.toString(), "-blur", "0x8", upload.toString());
+  // Streams the image through ImageMagick: the download is piped into "convert" and its output is
+  // uploaded as it is produced, so the image is never held in memory or written to /tmp.
+  private static boolean blurWithImageMagick(Blob blob, BlobInfo blurredBlobInfo)
+      throws IOException {
+    CONVERSIONS.acquireUninterruptibly();
     try {
-      ProcessBuilder pb = new ProcessBuilder(args);
-      Process process = pb.start();
-      process.waitFor();
-    } catch (Exception e) {
+      // "-" reads the image from stdin and writes it to stdout, in the same format.
+      List<String> args = List.of("convert", "-", "-blur", "0x8", "-");
+      Process process =
+          new ProcessBuilder(args).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+      // Feed stdin from another thread, so that reading stdout below cannot deadlock.
+      CompletableFuture<Void> feed =
+          CompletableFuture.runAsync(
+              () -> {
+                try (ReadChannel reader = blob.reader();
+                    InputStream in = Channels.newInputStream(reader);
+                    OutputStream stdin = process.getOutputStream()) {
+                  in.transferTo(stdin);
+                } catch (IOException e) {
+                  process.destroy();
+                  throw new CompletionException(e);
+                }
+              },
+              STDIN_FEEDERS);
+
+      try {
+        WriteChannel writer = storage.writer(blurredBlobInfo);
+        try (InputStream stdout = process.getInputStream()) {
+          stdout.transferTo(Channels.newOutputStream(writer));
+        }
+        int exitCode = process.waitFor();
+        feed.join();
+        if (exitCode != 0) {
+          // Leave the upload unfinished, so no partial image is created.
+          logger.info(String.format("Error: convert exited with code %d", exitCode));
+          return false;
+        }
+        // Closing the channel completes the upload.
+        writer.close();
+        return true;
+      } finally {
+        process.destroy();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       logger.info(String.format("Error: %s", e.getMessage()));
+      return false;
+    } catch (CompletionException e) {
+      logger.info(String.format("Error: %s", e.getCause().getMessage()));
+      return false;
+    } finally {
+      CONVERSIONS.release();
     }
+  }
 
-    // Upload image to blurred bucket.
-    BlobId blurredBlobId = BlobId.of(BLURRED_BUCKET_NAME, fileName);
-    BlobInfo blurredBlobInfo =
-        BlobInfo.newBuilder(blurredBlobId).setContentType(blob.getContentType()).build();
+  // Blurs a small image in memory with a Gaussian blur, for images Java can read and write.
+  private static boolean blurInJava(Blob blob, BlobInfo blurredBlobInfo) throws IOException {
+    if (blob.getContentType() == null) {
+      return false;
+    }
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByMIMEType(blob.getContentType());
+    if (!writers.hasNext()) {
+      return false;
+    }
+    // Buffer images in memory rather than in temporary files.
+    ImageIO.setUseCache(false);
+    BufferedImage image;
+    try (ReadChannel reader = blob.reader()) {
+      image = readImage(Channels.newInputStream(reader), JAVA_BLUR_MAX_PIXELS);
+    }
+    if (image == null) {
+      return false;
+    }
 
-    byte[] blurredFile = Files.readAllBytes(upload);
-    storage.create(blurredBlobInfo, blurredFile);
-    logger.info(
-        String.format("Blurred image uploaded to: gs://%s/%s", BLURRED_BUCKET_NAME, fileName));
+    BufferedImage blurredImage = GaussianBlur.blur(image, BLUR_SIGMA);
+    ImageWriter imageWriter = writers.next();
+    try (WriteChannel writer = storage.writer(blurredBlobInfo);
+        OutputStream out = Channels.newOutputStream(writer);
+        ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+      imageWriter.setOutput(imageOut);
+      imageWriter.write(blurredImage);
+    } finally {
+      imageWriter.dispose();
+    }
+    return true;
+  }
 
-    // Remove images from fileSystem
-    Files.delete(download);
-    Files.delete(upload);
+  // Decodes an image, or returns null if Java cannot read it or it has more than maxPixels pixels.
+  // The size is read from the image header, before any pixels are decoded.
+  static BufferedImage readImage(InputStream in, long maxPixels) throws IOException {
+    try (ImageInputStream imageIn = ImageIO.createImageInputStream(in)) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(imageIn);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      ImageReader imageReader = readers.next();
+      try {
+        imageReader.setInput(imageIn, true, true);
+        if ((long) imageReader.getWidth(0) * imageReader.getHeight(0) > maxPixels) {
+          return null;
+        }
+        return imageReader.read(0);
+      } finally {
+        imageReader.dispose();
+      }
+    }
   }
   // [END functions_imagemagick_blur]
   // [START functions_imagemagick_setup]
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package functions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GaussianBlurTest {
+
+  // Returns a one-row image with the given ARGB pixels.
+  private static BufferedImage row(int type, int... pixels) {
+    BufferedImage image = new BufferedImage(pixels.length, 1, type);
+    image.setRGB(0, 0, pixels.length, 1, pixels, 0, pixels.length);
+    return image;
+  }
+
+  @Test
+  public void blur_keepsUniformImage() {
+    BufferedImage image = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < 3; y++) {
+      for (int x = 0; x < 4; x++) {
+        image.setRGB(x, y, 0x336699);
+      }
+    }
+
+    BufferedImage blurred = GaussianBlur.blur(image, 2);
+
+    for (int y = 0; y < 3; y++) {
+      for (int x = 0; x < 4; x++) {
+        assertThat(blurred.getRGB(x, y)).isEqualTo(0xff336699);
+      }
+    }
+  }
+
+  @Test
+  public void blur_repeatsEdgePixels() {
+    // With sigma 1 the kernel weights are 0.399, 0.242, 0.054 and 0.004 for offsets 0 to 3.
+    // Offsets past the left edge read the edge pixel: 255 * (0.399 + 0.242 + 0.054 + 0.004).
+    BufferedImage image = row(BufferedImage.TYPE_INT_RGB, 0xff0000, 0x000000, 0x000000);
+
+    BufferedImage blurred = GaussianBlur.blur(image, 1);
+
+    assertThat(blurred.getRGB(0, 0)).isEqualTo(0xffb20000);
+    assertThat(blurred.getRGB(1, 0)).isEqualTo(0xff4d0000);
+    assertThat(blurred.getRGB(2, 0)).isEqualTo(0xff0f0000);
+  }
+
+  @Test
+  public void blur_blursAlphaChannel() {
+    BufferedImage image =
+        row(BufferedImage.TYPE_INT_ARGB, 0xff0000ff, 0x000000ff, 0x000000ff);
+
+    BufferedImage blurred = GaussianBlur.blur(image, 1);
+
+    assertThat(blurred.getColorModel().hasAlpha()).isTrue();
+    assertThat(blurred.getRGB(0, 0)).isEqualTo(0xb20000ff);
+    assertThat(blurred.getRGB(1, 0)).isEqualTo(0x4d0000ff);
+    assertThat(blurred.getRGB(2, 0)).isEqualTo(0x0f0000ff);
+  }
+
+  @Test
+  public void blur_keepsOpaqueImageWithoutAlpha() {
+    BufferedImage image = row(BufferedImage.TYPE_INT_RGB, 0x000000, 0xffffff);
+
+    BufferedImage blurred = GaussianBlur.blur(image, 1);
+
+    assertThat(blurred.getColorModel().hasAlpha()).isFalse();
+    assertThat(blurred.getRGB(0, 0) >>> 24).isEqualTo(0xff);
+    assertThat(blurred.getRGB(1, 0) >>> 24).isEqualTo(0xff);
+  }
+}
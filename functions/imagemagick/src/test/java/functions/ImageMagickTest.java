@@ -17,13 +17,20 @@
 package functions;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.testing.TestLogHandler;
 import functions.eventpojos.GcsEvent;
 import functions.eventpojos.MockContext;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
+import javax.imageio.ImageIO;
 import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -91,4 +98,30 @@ public class ImageMagickTest {
     assertThat(LOG_HANDLER.getStoredLogRecords().get(1).getMessage()).contains(
         "Error opening file");
   }
+
+  @Test
+  public void readImage_decodesImagesWithinPixelLimit() throws IOException {
+    BufferedImage image = ImageMagick.readImage(png(40, 30), 40 * 30);
+
+    assertThat(image.getWidth()).isEqualTo(40);
+    assertThat(image.getHeight()).isEqualTo(30);
+  }
+
+  @Test
+  public void readImage_skipsImagesOverPixelLimit() throws IOException {
+    assertThat(ImageMagick.readImage(png(40, 30), 40 * 30 - 1)).isNull();
+  }
+
+  @Test
+  public void readImage_skipsUnreadableData() throws IOException {
+    InputStream notAnImage = new ByteArrayInputStream("not an image".getBytes(UTF_8));
+
+    assertThat(ImageMagick.readImage(notAnImage, Long.MAX_VALUE)).isNull();
+  }
+
+  private static InputStream png(int width, int height) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+    return new ByteArrayInputStream(out.toByteArray());
+  }
 }
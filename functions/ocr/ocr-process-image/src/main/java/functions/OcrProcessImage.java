@@ -18,6 +18,8 @@ package functions;
 
 // [START functions_ocr_process]
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.functions.BackgroundFunction;
 import com.google.cloud.functions.Context;
 import com.google.cloud.pubsub.v1.Publisher;
@@ -50,15 +52,36 @@ public class OcrProcessImage implements BackgroundFunction<GcsEvent> {
   private static final String PROJECT_ID = System.getenv("GCP_PROJECT");
   private static final String TRANSLATE_TOPIC_NAME = System.getenv("TRANSLATE_TOPIC");
   private static final String[] TO_LANGS = System.getenv("TO_LANG").split(",");
+  // When "true", request all translations of an image with a single message
+  private static final boolean TRANSLATE_BATCH =
+      Boolean.parseBoolean(System.getenv("TRANSLATE_BATCH"));
 
   private static final Logger logger = Logger.getLogger(OcrProcessImage.class.getName());
   private static final String LOCATION_NAME = LocationName.of(PROJECT_ID, "global").toString();
   private Publisher publisher;
 
+  // API clients are created on first use and shared by all invocations of this instance
+  private static ImageAnnotatorClient visionClient;
+  private static TranslationServiceClient translationClient;
+
   public OcrProcessImage() throws IOException {
     publisher = Publisher.newBuilder(
         ProjectTopicName.of(PROJECT_ID, TRANSLATE_TOPIC_NAME)).build();
   }
+
+  private static synchronized ImageAnnotatorClient getVisionClient() throws IOException {
+    if (visionClient == null) {
+      visionClient = ImageAnnotatorClient.create();
+    }
+    return visionClient;
+  }
+
+  private static synchronized TranslationServiceClient getTranslationClient() throws IOException {
+    if (translationClient == null) {
+      translationClient = TranslationServiceClient.create();
+    }
+    return translationClient;
+  }
   // [END functions_ocr_setup]
 
   // [START functions_ocr_process]
@@ -96,8 +119,8 @@ public class OcrProcessImage implements BackgroundFunction<GcsEvent> {
 
     // Detect text in an image using the Cloud Vision API
     AnnotateImageResponse visionResponse;
-    try (ImageAnnotatorClient client = ImageAnnotatorClient.create()) {
-      visionResponse = client.batchAnnotateImages(visionRequests).getResponses(0);
+    try {
+      visionResponse = getVisionClient().batchAnnotateImages(visionRequests).getResponses(0);
       if (visionResponse == null || !visionResponse.hasFullTextAnnotation()) {
         logger.info(String.format("Image %s contains no text", filename));
         return;
@@ -126,8 +149,8 @@ public class OcrProcessImage implements BackgroundFunction<GcsEvent> {
             .setContent(text)
             .build();
     DetectLanguageResponse languageResponse;
-    try (TranslationServiceClient client = TranslationServiceClient.create()) {
-      languageResponse = client.detectLanguage(languageRequest);
+    try {
+      languageResponse = getTranslationClient().detectLanguage(languageRequest);
     } catch (IOException e) {
       // Log error (since IOException cannot be thrown by a function)
       logger.log(Level.SEVERE, "Error detecting language: " + e.getMessage(), e);
@@ -142,20 +165,37 @@ public class OcrProcessImage implements BackgroundFunction<GcsEvent> {
     String languageCode = languageResponse.getLanguages(0).getLanguageCode();
     logger.info(String.format("Detected language %s for file %s", languageCode, filename));
 
-    // Send a Pub/Sub translation request for every language we're going to translate to
-    for (String targetLanguage : TO_LANGS) {
-      logger.info("Sending translation request for language " + targetLanguage);
-      OcrTranslateApiMessage message = new OcrTranslateApiMessage(text, filename, targetLanguage);
+    // Send Pub/Sub translation requests for the languages we're going to translate to
+    List<ApiFuture<String>> publishFutures = new ArrayList<>();
+    for (OcrTranslateApiMessage message :
+        translationRequests(text, filename, TO_LANGS, TRANSLATE_BATCH)) {
+      logger.info("Sending translation request for language " + message.getLang());
       ByteString byteStr = ByteString.copyFrom(message.toPubsubData());
       PubsubMessage pubsubApiMessage = PubsubMessage.newBuilder().setData(byteStr).build();
-      try {
-        publisher.publish(pubsubApiMessage).get();
-      } catch (InterruptedException | ExecutionException e) {
-        // Log error
-        logger.log(Level.SEVERE, "Error publishing translation request: " + e.getMessage(), e);
-        return;
-      }
+      publishFutures.add(publisher.publish(pubsubApiMessage));
+    }
+    // Wait for all the requests, which are sent in parallel
+    try {
+      ApiFutures.allAsList(publishFutures).get();
+    } catch (InterruptedException | ExecutionException e) {
+      // Log error
+      logger.log(Level.SEVERE, "Error publishing translation request: " + e.getMessage(), e);
+    }
+  }
+
+  // Returns one translation request per language or, in batched mode, a single request listing
+  // every language
+  static List<OcrTranslateApiMessage> translationRequests(
+      String text, String filename, String[] targetLanguages, boolean batch) {
+    if (batch) {
+      String allLanguages = String.join(",", targetLanguages);
+      return List.of(new OcrTranslateApiMessage(text, filename, allLanguages));
+    }
+    List<OcrTranslateApiMessage> requests = new ArrayList<>();
+    for (String targetLanguage : targetLanguages) {
+      requests.add(new OcrTranslateApiMessage(text, filename, targetLanguage));
     }
+    return requests;
   }
   // [END functions_ocr_detect]
 
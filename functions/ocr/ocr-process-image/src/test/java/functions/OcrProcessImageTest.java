@@ -69,4 +69,25 @@ public class OcrProcessImageTest {
     Truth.assertThat(logs.get(2).getMessage()).contains(
         "Detected language en for file wakeupcat.jpg");
   }
+
+  @Test
+  public void functionsOcrProcess_shouldRequestEachLanguage() {
+    List<OcrTranslateApiMessage> requests = OcrProcessImage.translationRequests(
+        "Wake up human!", "wakeupcat.jpg", new String[] {"es", "fr"}, false);
+
+    Truth.assertThat(requests).hasSize(2);
+    Truth.assertThat(requests.get(0).getLang()).isEqualTo("es");
+    Truth.assertThat(requests.get(1).getLang()).isEqualTo("fr");
+  }
+
+  @Test
+  public void functionsOcrProcess_shouldBatchLanguages() {
+    List<OcrTranslateApiMessage> requests = OcrProcessImage.translationRequests(
+        "Wake up human!", "wakeupcat.jpg", new String[] {"es", "fr"}, true);
+
+    Truth.assertThat(requests).hasSize(1);
+    Truth.assertThat(requests.get(0).getText()).isEqualTo("Wake up human!");
+    Truth.assertThat(requests.get(0).getFilename()).isEqualTo("wakeupcat.jpg");
+    Truth.assertThat(requests.get(0).getLang()).isEqualTo("es,fr");
+  }
 }
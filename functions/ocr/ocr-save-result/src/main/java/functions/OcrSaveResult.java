@@ -26,6 +26,7 @@ import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageOptions;
 import functions.eventpojos.PubSubMessage;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.logging.Logger;
 
 public class OcrSaveResult implements BackgroundFunction<PubSubMessage> {
@@ -37,18 +38,21 @@ public class OcrSaveResult implements BackgroundFunction<PubSubMessage> {
 
   @Override
   public void accept(PubSubMessage pubSubMessage, Context context) {
-    OcrTranslateApiMessage ocrMessage = OcrTranslateApiMessage.fromPubsubData(
-        pubSubMessage.getData().getBytes(StandardCharsets.UTF_8));
+    // In batched mode, one message carries the translations into several languages
+    List<OcrTranslateApiMessage> ocrMessages =
+        OcrTranslateApiMessages.listFromJson(pubSubMessage.decodeData());
 
-    logger.info("Received request to save file " +  ocrMessage.getFilename());
+    for (OcrTranslateApiMessage ocrMessage : ocrMessages) {
+      logger.info("Received request to save file " +  ocrMessage.getFilename());
 
-    String newFileName = String.format(
-        "%s_to_%s.txt", ocrMessage.getFilename(), ocrMessage.getLang());
+      String newFileName = String.format(
+          "%s_to_%s.txt", ocrMessage.getFilename(), ocrMessage.getLang());
 
-    // Save file to RESULT_BUCKET with name newFileNaem
-    logger.info(String.format("Saving result to %s in bucket %s", newFileName, RESULT_BUCKET));
-    BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(RESULT_BUCKET, newFileName)).build();
-    STORAGE.create(blobInfo, ocrMessage.getText().getBytes(StandardCharsets.UTF_8));
+      // Save file to RESULT_BUCKET with name newFileNaem
+      logger.info(String.format("Saving result to %s in bucket %s", newFileName, RESULT_BUCKET));
+      BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(RESULT_BUCKET, newFileName)).build();
+      STORAGE.create(blobInfo, ocrMessage.getText().getBytes(StandardCharsets.UTF_8));
+    }
     logger.info("File saved");
   }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package functions;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes {@link OcrTranslateApiMessage}s in Pub/Sub message data, either as a single
+ * JSON object or, in batched mode, as a JSON array carrying the translations of one file into
+ * several languages.
+ */
+public final class OcrTranslateApiMessages {
+  private static final Gson gson = new Gson();
+
+  private OcrTranslateApiMessages() {}
+
+  // Parses decoded message data, such as PubSubMessage.decodeData(), straight from its bytes
+  // rather than from a string copy of the whole (possibly large) text.
+  public static OcrTranslateApiMessage fromJson(ByteBuffer data) {
+    return fromJson(JsonParser.parseReader(reader(data)));
+  }
+
+  public static List<OcrTranslateApiMessage> listFromJson(ByteBuffer data) {
+    JsonElement json = JsonParser.parseReader(reader(data));
+    List<OcrTranslateApiMessage> messages = new ArrayList<>();
+    if (json.isJsonArray()) {
+      for (JsonElement element : json.getAsJsonArray()) {
+        messages.add(fromJson(element));
+      }
+    } else {
+      messages.add(fromJson(json));
+    }
+    return messages;
+  }
+
+  public static byte[] toPubsubData(List<OcrTranslateApiMessage> messages) {
+    return gson.toJson(messages).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static Reader reader(ByteBuffer data) {
+    byte[] bytes;
+    int offset;
+    if (data.hasArray()) {
+      bytes = data.array();
+      offset = data.arrayOffset() + data.position();
+    } else {
+      bytes = new byte[data.remaining()];
+      data.duplicate().get(bytes);
+      offset = 0;
+    }
+    return new InputStreamReader(
+        new ByteArrayInputStream(bytes, offset, data.remaining()), StandardCharsets.UTF_8);
+  }
+
+  private static OcrTranslateApiMessage fromJson(JsonElement json) {
+    Map<String, String> jsonMap = gson.fromJson(json, Map.class);
+    return new OcrTranslateApiMessage(
+        jsonMap.get("text"), jsonMap.get("filename"), jsonMap.get("lang"));
+  }
+}
@@ -17,6 +17,8 @@
 package functions.eventpojos;
 
 // [START functions_helloworld_pubsub_message]
+import java.nio.ByteBuffer;
+import java.util.Base64;
 import java.util.Map;
 
 public class PubSubMessage {
@@ -36,6 +38,11 @@ public class PubSubMessage {
     this.data = data;
   }
 
+  // Returns the message data decoded from base64, or null if the message has none.
+  public ByteBuffer decodeData() {
+    return data == null ? null : ByteBuffer.wrap(Base64.getDecoder().decode(data));
+  }
+
   public Map<String, String> getAttributes() {
     return attributes;
   }
@@ -61,8 +61,10 @@ public class OcrSaveResultTest {
 
   @AfterClass
   public static void tearDownClass() {
-    String deletedFilename = String.format("test-%s.jpg_to_es.txt", RANDOM_STRING);
-    STORAGE.delete(RESULT_BUCKET, deletedFilename);
+    for (String lang : List.of("es", "fr")) {
+      String deletedFilename = String.format("test-%s.jpg_to_%s.txt", RANDOM_STRING, lang);
+      STORAGE.delete(RESULT_BUCKET, deletedFilename);
+    }
   }
 
   @Test(expected = IllegalArgumentException.class)
@@ -102,4 +104,23 @@ public class OcrSaveResultTest {
     BlobInfo resultBlob = STORAGE.get(RESULT_BUCKET, resultFilename);
     assertThat(resultBlob).isNotNull();
   }
+
+  @Test
+  public void functionsOcrSave_shouldSaveEachTranslationInBatch() throws IOException {
+    String filename = String.format("test-%s.jpg", RANDOM_STRING);
+    List<OcrTranslateApiMessage> translations = List.of(
+        new OcrTranslateApiMessage("¡Despierta humano!", filename, "es"),
+        new OcrTranslateApiMessage("Réveille-toi humain!", filename, "fr"));
+
+    PubSubMessage message = new PubSubMessage();
+    message.setData(Base64.getEncoder().encodeToString(
+        OcrTranslateApiMessages.toPubsubData(translations)));
+
+    new OcrSaveResult().accept(message, null);
+
+    for (String lang : List.of("es", "fr")) {
+      BlobInfo resultBlob = STORAGE.get(RESULT_BUCKET, filename + "_to_" + lang + ".txt");
+      assertThat(resultBlob).isNotNull();
+    }
+  }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package functions;
+
+import com.google.common.truth.Truth;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class OcrTranslateApiMessagesTest {
+
+  @Test
+  public void listFromJson_shouldReadArray() {
+    List<OcrTranslateApiMessage> translations = List.of(
+        new OcrTranslateApiMessage("¡Despierta humano!", "wakeupcat.jpg", "es"),
+        new OcrTranslateApiMessage("Réveille-toi humain!", "wakeupcat.jpg", "fr"));
+
+    List<OcrTranslateApiMessage> messages = OcrTranslateApiMessages.listFromJson(
+        ByteBuffer.wrap(OcrTranslateApiMessages.toPubsubData(translations)));
+
+    Truth.assertThat(messages).hasSize(2);
+    Truth.assertThat(messages.get(0).getText()).isEqualTo("¡Despierta humano!");
+    Truth.assertThat(messages.get(0).getLang()).isEqualTo("es");
+    Truth.assertThat(messages.get(1).getText()).isEqualTo("Réveille-toi humain!");
+    Truth.assertThat(messages.get(1).getFilename()).isEqualTo("wakeupcat.jpg");
+    Truth.assertThat(messages.get(1).getLang()).isEqualTo("fr");
+  }
+
+  @Test
+  public void listFromJson_shouldReadSingleObject() {
+    OcrTranslateApiMessage translation =
+        new OcrTranslateApiMessage("¡Despierta humano!", "wakeupcat.jpg", "es");
+
+    List<OcrTranslateApiMessage> messages =
+        OcrTranslateApiMessages.listFromJson(ByteBuffer.wrap(translation.toPubsubData()));
+
+    Truth.assertThat(messages).hasSize(1);
+    Truth.assertThat(messages.get(0).getText()).isEqualTo("¡Despierta humano!");
+  }
+
+  @Test
+  public void fromJson_shouldReadFromBufferPosition() {
+    byte[] json = "xx{\"text\":\"Wake up human!\",\"filename\":\"a.jpg\",\"lang\":\"es\"}yy"
+        .getBytes(StandardCharsets.UTF_8);
+    ByteBuffer data = ByteBuffer.wrap(json, 2, json.length - 4).slice();
+
+    OcrTranslateApiMessage message = OcrTranslateApiMessages.fromJson(data);
+
+    Truth.assertThat(message.getText()).isEqualTo("Wake up human!");
+    Truth.assertThat(message.getFilename()).isEqualTo("a.jpg");
+    Truth.assertThat(message.getLang()).isEqualTo("es");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void listFromJson_shouldValidateParams() {
+    OcrTranslateApiMessages.listFromJson(
+        ByteBuffer.wrap("[{\"text\":\"Wake up human!\"}]".getBytes(StandardCharsets.UTF_8)));
+  }
+}
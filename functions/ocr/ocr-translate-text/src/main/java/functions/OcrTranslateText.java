@@ -18,6 +18,8 @@ package functions;
 
 // [START functions_ocr_translate]
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.functions.BackgroundFunction;
 import com.google.cloud.functions.Context;
 import com.google.cloud.pubsub.v1.Publisher;
@@ -30,7 +32,8 @@ import com.google.pubsub.v1.ProjectTopicName;
 import com.google.pubsub.v1.PubsubMessage;
 import functions.eventpojos.PubSubMessage;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -45,54 +48,91 @@ public class OcrTranslateText implements BackgroundFunction<PubSubMessage> {
 
   private Publisher publisher;
 
+  // Created on first use and shared by all invocations of this instance
+  private static TranslationServiceClient translationClient;
+
   public OcrTranslateText() throws IOException {
     publisher = Publisher.newBuilder(
         ProjectTopicName.of(PROJECT_ID, RESULTS_TOPIC_NAME)).build();
   }
 
+  private static synchronized TranslationServiceClient getTranslationClient() throws IOException {
+    if (translationClient == null) {
+      translationClient = TranslationServiceClient.create();
+    }
+    return translationClient;
+  }
+
   @Override
   public void accept(PubSubMessage pubSubMessage, Context context) {
-    OcrTranslateApiMessage ocrMessage = OcrTranslateApiMessage.fromPubsubData(
-        pubSubMessage.getData().getBytes(StandardCharsets.UTF_8));
+    OcrTranslateApiMessage ocrMessage =
+        OcrTranslateApiMessages.fromJson(pubSubMessage.decodeData());
 
     String targetLang = ocrMessage.getLang();
     logger.info("Translating text into " + targetLang);
 
-    // Translate text to target language
+    // In batched mode, lang lists several languages; translate into all of them in parallel
     String text = ocrMessage.getText();
-    TranslateTextRequest request =
-        TranslateTextRequest.newBuilder()
-            .setParent(LOCATION_NAME)
-            .setMimeType("text/plain")
-            .setTargetLanguageCode(targetLang)
-            .addContents(text)
-            .build();
-
-    TranslateTextResponse response;
-    try (TranslationServiceClient client = TranslationServiceClient.create()) {
-      response = client.translateText(request);
+    String[] targetLangs = targetLang.split(",");
+    List<ApiFuture<TranslateTextResponse>> responseFutures = new ArrayList<>();
+    try {
+      for (String lang : targetLangs) {
+        TranslateTextRequest request =
+            TranslateTextRequest.newBuilder()
+                .setParent(LOCATION_NAME)
+                .setMimeType("text/plain")
+                .setTargetLanguageCode(lang)
+                .addContents(text)
+                .build();
+        responseFutures.add(getTranslationClient().translateTextCallable().futureCall(request));
+      }
     } catch (IOException e) {
       // Log error (since IOException cannot be thrown by a function)
       logger.log(Level.SEVERE, "Error translating text: " + e.getMessage(), e);
       return;
     }
-    if (response.getTranslationsCount() == 0) {
+
+    // A language that fails to translate is left out rather than failing the others
+    List<TranslateTextResponse> responses;
+    try {
+      responses = ApiFutures.successfulAsList(responseFutures).get();
+    } catch (InterruptedException | ExecutionException e) {
+      logger.log(Level.SEVERE, "Error translating text: " + e.getMessage(), e);
       return;
     }
 
-    String translatedText = response.getTranslations(0).getTranslatedText();
-    logger.info("Translated text: " + translatedText);
-
-    // Send translated text to (subsequent) Pub/Sub topic
     String filename = ocrMessage.getFilename();
-    OcrTranslateApiMessage translateMessage = new OcrTranslateApiMessage(
-        translatedText, filename, targetLang);
+    List<OcrTranslateApiMessage> translateMessages = new ArrayList<>();
+    List<String> translatedLangs = new ArrayList<>();
+    for (int i = 0; i < targetLangs.length; i++) {
+      TranslateTextResponse response = responses.get(i);
+      if (response == null) {
+        logger.warning("Error translating text into " + targetLangs[i]);
+        continue;
+      }
+      if (response.getTranslationsCount() == 0) {
+        continue;
+      }
+      String translatedText = response.getTranslations(0).getTranslatedText();
+      logger.info("Translated text: " + translatedText);
+      translateMessages.add(new OcrTranslateApiMessage(translatedText, filename, targetLangs[i]));
+      translatedLangs.add(targetLangs[i]);
+    }
+    if (translateMessages.isEmpty()) {
+      return;
+    }
+
+    // Send translated text to (subsequent) Pub/Sub topic, all languages in one message
     try {
-      ByteString byteStr = ByteString.copyFrom(translateMessage.toPubsubData());
+      byte[] data =
+          translateMessages.size() == 1
+              ? translateMessages.get(0).toPubsubData()
+              : OcrTranslateApiMessages.toPubsubData(translateMessages);
+      ByteString byteStr = ByteString.copyFrom(data);
       PubsubMessage pubsubApiMessage = PubsubMessage.newBuilder().setData(byteStr).build();
 
       publisher.publish(pubsubApiMessage).get();
-      logger.info("Text translated to " + targetLang);
+      logger.info("Text translated to " + String.join(",", translatedLangs));
     } catch (InterruptedException | ExecutionException e) {
       // Log error (since these exception types cannot be thrown by a function)
       logger.log(Level.SEVERE, "Error publishing translation save request: " + e.getMessage(), e);
@@ -82,4 +82,22 @@ public class OcrTranslateTextTest {
     Truth.assertThat(logs.get(1).getMessage()).contains("¡Despierta humano!");
     Truth.assertThat(logs.get(2).getMessage()).isEqualTo("Text translated to es");
   }
+
+  @Test
+  public void functionsOcrTranslate_shouldTranslateTextIntoEachLanguage() throws IOException {
+    JsonObject dataJson = new JsonObject();
+    dataJson.addProperty("text", "Wake up human!");
+    dataJson.addProperty("filename", "wakeupcat.jpg");
+    dataJson.addProperty("lang", "es,fr");
+
+    PubSubMessage message = new PubSubMessage();
+    message.setData(new String(Base64.getEncoder().encode(gson.toJson(dataJson).getBytes())));
+
+    sampleUnderTest.accept(message, null); // must be in a variable to avoid GC issues
+
+    List<LogRecord> logs = LOG_HANDLER.getStoredLogRecords();
+    Truth.assertThat(logs.get(1).getMessage()).contains("¡Despierta humano!");
+    Truth.assertThat(logs.get(2).getMessage()).startsWith("Translated text: ");
+    Truth.assertThat(logs.get(3).getMessage()).isEqualTo("Text translated to es,fr");
+  }
 }
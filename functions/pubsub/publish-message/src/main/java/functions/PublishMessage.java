@@ -17,10 +17,19 @@
 package functions;
 
 // [START functions_pubsub_publish]
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.batching.BatchingSettings;
+import com.google.api.gax.batching.FlowControlSettings;
+import com.google.api.gax.batching.FlowController.LimitExceededBehavior;
 import com.google.cloud.functions.HttpFunction;
 import com.google.cloud.functions.HttpRequest;
 import com.google.cloud.functions.HttpResponse;
 import com.google.cloud.pubsub.v1.Publisher;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import com.google.protobuf.ByteString;
 import com.google.pubsub.v1.ProjectTopicName;
 import com.google.pubsub.v1.PubsubMessage;
@@ -28,10 +37,15 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.threeten.bp.Duration;
 
 public class PublishMessage implements HttpFunction {
   // TODO<developer> set this environment variable
@@ -39,6 +53,52 @@ public class PublishMessage implements HttpFunction {
 
   private static final Logger logger = Logger.getLogger(PublishMessage.class.getName());
 
+  // Send a batch once it has 100 messages or 1 MB, or after 10 ms
+  private static final BatchingSettings BATCHING_SETTINGS =
+      BatchingSettings.newBuilder()
+          .setElementCountThreshold(100L)
+          .setRequestByteThreshold(1_000_000L)
+          .setDelayThreshold(Duration.ofMillis(10))
+          .setFlowControlSettings(
+              // Make publish() wait, rather than buffer without limit, when Pub/Sub falls behind
+              FlowControlSettings.newBuilder()
+                  .setMaxOutstandingElementCount(10_000L)
+                  .setMaxOutstandingRequestBytes(100_000_000L)
+                  .setLimitExceededBehavior(LimitExceededBehavior.Block)
+                  .build())
+          .build();
+
+  // Publishers are reused across requests, for up to this many topics, so that requests share
+  // their channels, threads and batches instead of creating a publisher each time
+  private static final int MAX_PUBLISHERS = 10;
+
+  // Access-ordered, so the least recently used publisher is shut down first
+  private static final Map<String, Publisher> publishers =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Publisher> eldest) {
+          if (size() <= MAX_PUBLISHERS) {
+            return false;
+          }
+          // Messages already published are still sent before the publisher stops
+          logger.info("Shutting down publisher for topic: " + eldest.getKey());
+          eldest.getValue().shutdown();
+          return true;
+        }
+      };
+
+  private static synchronized Publisher getPublisher(String topicName) throws IOException {
+    Publisher publisher = publishers.get(topicName);
+    if (publisher == null) {
+      publisher =
+          Publisher.newBuilder(ProjectTopicName.of(PROJECT_ID, topicName))
+              .setBatchingSettings(BATCHING_SETTINGS)
+              .build();
+      publishers.put(topicName, publisher);
+    }
+    return publisher;
+  }
+
   @Override
   public void service(HttpRequest request, HttpResponse response) throws IOException {
     Optional<String> maybeTopicName = request.getFirstQueryParameter("topic");
@@ -46,7 +106,15 @@ public class PublishMessage implements HttpFunction {
 
     BufferedWriter responseWriter = response.getWriter();
 
-    if (maybeTopicName.isEmpty() || maybeMessage.isEmpty()) {
+    // Without a 'message' parameter, the request body may hold a JSON array of messages
+    List<String> messages = new ArrayList<>();
+    if (maybeMessage.isPresent()) {
+      messages.add(maybeMessage.get());
+    } else if (maybeTopicName.isPresent()) {
+      messages.addAll(parseMessageArray(request));
+    }
+
+    if (maybeTopicName.isEmpty() || messages.isEmpty()) {
       response.setStatusCode(HttpURLConnection.HTTP_BAD_REQUEST);
 
       responseWriter.write("Missing 'topic' and/or 'message' parameter(s).");
@@ -56,19 +124,24 @@ public class PublishMessage implements HttpFunction {
     String topicName = maybeTopicName.get();
     logger.info("Publishing message to topic: " + topicName);
 
-    // Create the PubsubMessage object
-    // (This is different than the PubSubMessage POJO used in Pub/Sub-triggered functions)
-    ByteString byteStr = ByteString.copyFrom(maybeMessage.get(), StandardCharsets.UTF_8);
-    PubsubMessage pubsubApiMessage = PubsubMessage.newBuilder().setData(byteStr).build();
+    Publisher publisher = getPublisher(topicName);
 
-    Publisher publisher = Publisher.newBuilder(
-        ProjectTopicName.of(PROJECT_ID, topicName)).build();
+    // Publish all the messages, then wait for them together
+    List<ApiFuture<String>> publishFutures = new ArrayList<>();
+    for (String message : messages) {
+      // Create the PubsubMessage object
+      // (This is different than the PubSubMessage POJO used in Pub/Sub-triggered functions)
+      ByteString byteStr = ByteString.copyFrom(message, StandardCharsets.UTF_8);
+      PubsubMessage pubsubApiMessage = PubsubMessage.newBuilder().setData(byteStr).build();
+      publishFutures.add(publisher.publish(pubsubApiMessage));
+    }
 
-    // Attempt to publish the message
+    // Attempt to publish the messages
     String responseMessage;
     try {
-      publisher.publish(pubsubApiMessage).get();
-      responseMessage = "Message published.";
+      ApiFutures.allAsList(publishFutures).get();
+      responseMessage =
+          messages.size() == 1 ? "Message published." : messages.size() + " messages published.";
     } catch (InterruptedException | ExecutionException e) {
       logger.log(Level.SEVERE, "Error publishing Pub/Sub message: " + e.getMessage(), e);
       responseMessage = "Error publishing Pub/Sub message; see logs for more info.";
@@ -76,5 +149,24 @@ public class PublishMessage implements HttpFunction {
 
     responseWriter.write(responseMessage);
   }
+
+  // Returns the messages in a request body such as ["first", "second"], or none if the body is
+  // not a JSON array of strings
+  private static List<String> parseMessageArray(HttpRequest request) throws IOException {
+    List<String> messages = new ArrayList<>();
+    try {
+      JsonElement body = JsonParser.parseReader(request.getReader());
+      if (!body.isJsonArray()) {
+        return messages;
+      }
+      JsonArray array = body.getAsJsonArray();
+      for (JsonElement element : array) {
+        messages.add(element.getAsString());
+      }
+    } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+      messages.clear();
+    }
+    return messages;
+  }
 }
 // [END functions_pubsub_publish]
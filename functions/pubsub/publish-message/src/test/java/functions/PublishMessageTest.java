@@ -17,6 +17,7 @@
 package functions;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.cloud.functions.HttpRequest;
@@ -27,6 +28,7 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.net.HttpURLConnection;
 import java.util.Optional;
 import java.util.logging.Logger;
 import org.junit.Before;
@@ -90,4 +92,30 @@ public class PublishMessageTest {
         "Publishing message to topic: " + FUNCTIONS_TOPIC);
     assertThat(responseOut.toString()).isEqualTo("Message published.");
   }
+
+  @Test
+  public void functionsPubsubPublish_shouldPublishMessageArray() throws Exception {
+    when(request.getFirstQueryParameter("topic")).thenReturn(Optional.of(FUNCTIONS_TOPIC));
+    when(request.getReader())
+        .thenReturn(new BufferedReader(new StringReader("[\"hello\", \"world\"]")));
+
+    new PublishMessage().service(request, response);
+
+    writerOut.flush();
+    assertThat(responseOut.toString()).isEqualTo("2 messages published.");
+  }
+
+  @Test
+  public void functionsPubsubPublish_shouldRejectBodyThatIsNotAnArray() throws Exception {
+    when(request.getFirstQueryParameter("topic")).thenReturn(Optional.of(FUNCTIONS_TOPIC));
+    when(request.getReader())
+        .thenReturn(new BufferedReader(new StringReader("{\"message\": \"hello\"}")));
+
+    new PublishMessage().service(request, response);
+
+    writerOut.flush();
+    verify(response).setStatusCode(HttpURLConnection.HTTP_BAD_REQUEST);
+    assertThat(responseOut.toString()).isEqualTo(
+        "Missing 'topic' and/or 'message' parameter(s).");
+  }
 }
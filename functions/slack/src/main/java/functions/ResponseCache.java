@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package functions;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size-bounded cache of responses that expire after a fixed time.
+ *
+ * <p>Concurrent requests for a key that is being loaded wait for that load instead of starting
+ * another one. Failed loads are not cached.
+ */
+final class ResponseCache<V> {
+
+  /** Computes the response for a key that is not cached. */
+  interface Loader<V> {
+    V load() throws IOException;
+  }
+
+  private static class Entry<V> {
+    private final CompletableFuture<V> response = new CompletableFuture<>();
+    // Set once the load has succeeded: an entry that is still being loaded never expires.
+    private volatile boolean loaded;
+    private volatile long expiresAtNanos;
+
+    boolean isExpired(long now) {
+      return loaded && now - expiresAtNanos >= 0;
+    }
+  }
+
+  private final ConcurrentHashMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+  private final long ttlNanos;
+  private final int maxEntries;
+
+  ResponseCache(long ttlSeconds, int maxEntries) {
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    this.maxEntries = maxEntries;
+  }
+
+  /** Returns the cached response for the key, loading it with the loader if needed. */
+  V get(String key, Loader<V> loader) throws IOException {
+    long now = System.nanoTime();
+    Entry<V> entry = entries.get(key);
+    if (entry == null || entry.isExpired(now)) {
+      if (entries.size() >= maxEntries) {
+        entries.values().removeIf(cached -> cached.isExpired(now));
+      }
+      Entry<V> fresh = new Entry<>();
+      entry = entries.compute(key, (k, old) -> old == null || old.isExpired(now) ? fresh : old);
+      if (entry == fresh) {
+        load(key, fresh, loader);
+      }
+    }
+    return await(entry);
+  }
+
+  private void load(String key, Entry<V> entry, Loader<V> loader) {
+    try {
+      V response = loader.load();
+      entry.expiresAtNanos = System.nanoTime() + ttlNanos;
+      entry.loaded = true;
+      entry.response.complete(response);
+      if (entries.size() > maxEntries) {
+        // Still full of live entries: return this response without keeping it.
+        entries.remove(key, entry);
+      }
+    } catch (IOException | RuntimeException e) {
+      entries.remove(key, entry);
+      entry.response.completeExceptionally(e);
+    }
+  }
+
+  private static <V> V await(Entry<V> entry) throws IOException {
+    try {
+      return entry.response.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      // Rethrow what the loader threw, so callers see the same exception either way.
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
@@ -32,6 +32,7 @@ import java.net.HttpURLConnection;
 import java.security.GeneralSecurityException;
 import java.time.ZonedDateTime;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Logger;
@@ -45,13 +46,18 @@ public class SlackSlashCommand implements HttpFunction {
   private static final String API_KEY = getenv("KG_API_KEY");
   private static final String SLACK_SECRET = getenv("SLACK_SECRET");
   private static final Gson gson = new Gson();
+  // Knowledge Graph results are reused for repeated queries
+  private static final long RESPONSE_CACHE_TTL_SECONDS = 600;
+  private static final int RESPONSE_CACHE_MAX_ENTRIES = 1000;
 
   private final String apiKey;
   private final Kgsearch kgClient;
   private final SlackSignature.Verifier verifier;
+  private final ResponseCache<JsonObject> responseCache =
+      new ResponseCache<>(RESPONSE_CACHE_TTL_SECONDS, RESPONSE_CACHE_MAX_ENTRIES);
 
   public SlackSlashCommand() throws IOException, GeneralSecurityException {
-    this(new SlackSignature.Verifier(new SlackSignature.Generator(SLACK_SECRET)));
+    this(new SlackSignature.Verifier(new ThreadLocalMacGenerator(SLACK_SECRET)));
   }
 
   SlackSlashCommand(SlackSignature.Verifier verifier) throws IOException, GeneralSecurityException {
@@ -227,8 +233,8 @@ public class SlackSlashCommand implements HttpFunction {
 
     String query = body.get("text");
 
-    // Call knowledge graph API
-    JsonObject kgResponse = searchKnowledgeGraph(query);
+    // Call knowledge graph API, unless the same query was answered recently
+    JsonObject kgResponse = responseCache.get(cacheKey(query), () -> searchKnowledgeGraph(query));
 
     // Format response to Slack
     // See https://api.slack.com/docs/message-formatting
@@ -238,5 +244,10 @@ public class SlackSlashCommand implements HttpFunction {
 
     response.setContentType("application/json");
   }
+
+  // Queries that differ only in case or surrounding whitespace share a cache entry.
+  private static String cacheKey(String query) {
+    return query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+  }
   // [END functions_slack_search]
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package functions;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class ResponseCacheTest {
+
+  private final AtomicInteger loads = new AtomicInteger();
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @After
+  public void afterTest() {
+    executor.shutdownNow();
+  }
+
+  private ResponseCache.Loader<String> loader(String response) {
+    return () -> {
+      loads.incrementAndGet();
+      return response;
+    };
+  }
+
+  @Test
+  public void reusesLoadedResponseTest() throws IOException {
+    ResponseCache<String> cache = new ResponseCache<>(60, 10);
+
+    assertThat(cache.get("lion", loader("first"))).isEqualTo("first");
+    assertThat(cache.get("lion", loader("second"))).isEqualTo("first");
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void reloadsExpiredResponseTest() throws IOException {
+    ResponseCache<String> cache = new ResponseCache<>(0, 10);
+
+    assertThat(cache.get("lion", loader("first"))).isEqualTo("first");
+    assertThat(cache.get("lion", loader("second"))).isEqualTo("second");
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void sharesInFlightLoadTest() throws Exception {
+    // With no time to live, only the loading state keeps the in-flight entry from expiring.
+    ResponseCache<String> cache = new ResponseCache<>(0, 10);
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    Future<String> first =
+        executor.submit(
+            () ->
+                cache.get(
+                    "lion",
+                    () -> {
+                      loads.incrementAndGet();
+                      loading.countDown();
+                      release.await();
+                      return "first";
+                    }));
+    assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+    Future<String> second = executor.submit(() -> cache.get("lion", loader("second")));
+    release.countDown();
+
+    assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo("first");
+    assertThat(second.get(10, TimeUnit.SECONDS)).isEqualTo("first");
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void doesNotCacheFailedLoadTest() throws IOException {
+    ResponseCache<String> cache = new ResponseCache<>(60, 10);
+    IOException failure = new IOException("quota exceeded");
+
+    IOException thrown =
+        assertThrows(
+            IOException.class,
+            () ->
+                cache.get(
+                    "lion",
+                    () -> {
+                      throw failure;
+                    }));
+
+    assertThat(thrown).isSameInstanceAs(failure);
+    assertThat(cache.get("lion", loader("second"))).isEqualTo("second");
+  }
+
+  @Test
+  public void doesNotKeepResponsesBeyondMaxEntriesTest() throws IOException {
+    ResponseCache<String> cache = new ResponseCache<>(60, 1);
+
+    cache.get("lion", loader("lion"));
+    cache.get("tiger", loader("tiger"));
+    cache.get("lion", loader("lion"));
+
+    assertThat(loads.get()).isEqualTo(2);
+    assertThat(cache.get("tiger", loader("tiger again"))).isEqualTo("tiger again");
+  }
+}
@@ -177,4 +177,16 @@ public class SlackSlashCommandTest {
     writerOut.flush();
     assertThat(responseOut.toString()).contains("https://en.wikipedia.org/wiki/Lion");
   }
+
+  @Test
+  public void threadLocalMacGeneratorMatchesSlackGeneratorTest() {
+    SlackSignature.Generator expected = new SlackSignature.Generator("test-secret");
+    SlackSignature.Generator generator = new ThreadLocalMacGenerator("test-secret");
+
+    // Generate twice, to check that the HMAC is reset between requests
+    for (String body : List.of("text=lion", "unused=foo&text=lion")) {
+      assertThat(generator.generate("1531420618", body))
+          .isEqualTo(expected.generate("1531420618", body));
+    }
+  }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package functions;
+
+import com.google.api.client.http.HttpStatusCodes;
+import com.google.cloud.functions.HttpRequest;
+import com.google.cloud.functions.HttpResponse;
+import com.google.cloud.spanner.DatabaseClient;
+import com.google.cloud.spanner.ResultSet;
+import com.google.cloud.spanner.SpannerException;
+import com.google.cloud.spanner.Statement;
+import com.google.common.base.MoreObjects;
+import com.google.gson.stream.JsonWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the albums one page at a time as JSON, ordered by key:
+ * {"albums": [{"singerId": 1, "albumId": 1, "albumTitle": "..."}, ...], "nextPageToken": "..."}
+ *
+ * <p>Rows are written as they are read, so the response is streamed to the client. Pass
+ * nextPageToken as the pageToken parameter to get the next page; it is absent on the last page.
+ */
+final class AlbumPages {
+  private static final Logger logger = Logger.getLogger(AlbumPages.class.getName());
+
+  /** Returns the client to query, creating it if needed. */
+  interface ClientProvider {
+    DatabaseClient get() throws Throwable;
+  }
+
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  private static final int MAX_PAGE_SIZE = 1000;
+
+  // How long a page is served from memory; 0 turns the cache off.
+  private static final long RESPONSE_CACHE_MILLIS =
+      Long.parseLong(MoreObjects.firstNonNull(System.getenv("RESPONSE_CACHE_MILLIS"), "0"));
+  private static final int RESPONSE_CACHE_MAX_ENTRIES = 100;
+
+  private static class CachedPage {
+    private final String json;
+    private final long expiresAtMillis;
+
+    CachedPage(String json, long expiresAtMillis) {
+      this.json = json;
+      this.expiresAtMillis = expiresAtMillis;
+    }
+  }
+
+  private static final Map<String, CachedPage> pageCache = new ConcurrentHashMap<>();
+
+  private AlbumPages() {}
+
+  static void service(HttpRequest request, HttpResponse response, ClientProvider clientProvider)
+      throws Exception {
+    int pageSize;
+    long[] after;
+    try {
+      pageSize =
+          request
+              .getFirstQueryParameter("pageSize")
+              .map(Integer::parseInt)
+              .orElse(DEFAULT_PAGE_SIZE);
+      after =
+          request.getFirstQueryParameter("pageToken").map(AlbumPages::decodeToken).orElse(null);
+    } catch (IllegalArgumentException e) {
+      response.setStatusCode(HttpStatusCodes.STATUS_CODE_BAD_REQUEST, e.getMessage());
+      response.getWriter().write("Invalid pageSize or pageToken");
+      return;
+    }
+    pageSize = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+    response.setContentType("application/json");
+
+    String cacheKey = pageSize + "/" + request.getFirstQueryParameter("pageToken").orElse("");
+    if (RESPONSE_CACHE_MILLIS > 0) {
+      CachedPage cached = pageCache.get(cacheKey);
+      if (cached != null && cached.expiresAtMillis > System.currentTimeMillis()) {
+        response.getWriter().write(cached.json);
+        return;
+      }
+    }
+
+    try {
+      DatabaseClient client = clientProvider.get();
+      if (RESPONSE_CACHE_MILLIS > 0) {
+        StringWriter page = new StringWriter();
+        writePage(client, pageSize, after, page);
+        long now = System.currentTimeMillis();
+        if (pageCache.size() >= RESPONSE_CACHE_MAX_ENTRIES) {
+          pageCache.values().removeIf(cached -> cached.expiresAtMillis <= now);
+        }
+        if (pageCache.size() < RESPONSE_CACHE_MAX_ENTRIES) {
+          pageCache.put(cacheKey, new CachedPage(page.toString(), now + RESPONSE_CACHE_MILLIS));
+        }
+        response.getWriter().write(page.toString());
+      } else {
+        writePage(client, pageSize, after, response.getWriter());
+      }
+    } catch (SpannerException e) {
+      // Query errors are raised by the first row, before anything is written.
+      response.setStatusCode(HttpStatusCodes.STATUS_CODE_SERVER_ERROR, e.getMessage());
+    } catch (Throwable t) {
+      logger.log(Level.SEVERE, "Spanner example failed", t);
+      response.setStatusCode(HttpStatusCodes.STATUS_CODE_SERVER_ERROR, t.getMessage());
+    }
+  }
+
+  private static void writePage(DatabaseClient client, int pageSize, long[] after, Writer out)
+      throws Exception {
+    // Read one row more than the page size to find out whether there is a next page.
+    Statement.Builder statement =
+        Statement.newBuilder("SELECT SingerId, AlbumId, AlbumTitle FROM Albums");
+    if (after != null) {
+      statement
+          .append(" WHERE SingerId > @singerId OR (SingerId = @singerId AND AlbumId > @albumId)")
+          .bind("singerId").to(after[0])
+          .bind("albumId").to(after[1]);
+    }
+    statement
+        .append(" ORDER BY SingerId, AlbumId LIMIT @limit")
+        .bind("limit").to(pageSize + 1);
+
+    try (ResultSet rs = client.singleUse().executeQuery(statement.build())) {
+      boolean hasRow = rs.next();
+      JsonWriter json = new JsonWriter(out);
+      json.beginObject().name("albums").beginArray();
+      int count = 0;
+      long singerId = 0;
+      long albumId = 0;
+      for (; hasRow && count < pageSize; hasRow = rs.next()) {
+        singerId = rs.getLong("SingerId");
+        albumId = rs.getLong("AlbumId");
+        json.beginObject()
+            .name("singerId").value(singerId)
+            .name("albumId").value(albumId)
+            .name("albumTitle").value(rs.isNull("AlbumTitle") ? null : rs.getString("AlbumTitle"))
+            .endObject();
+        count++;
+      }
+      json.endArray();
+      if (hasRow) {
+        json.name("nextPageToken").value(encodeToken(singerId, albumId));
+      }
+      json.endObject();
+      json.flush();
+    }
+  }
+
+  // A page token holds the key of the last album on the previous page.
+  private static String encodeToken(long singerId, long albumId) {
+    String key = singerId + "/" + albumId;
+    return Base64.getUrlEncoder().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static long[] decodeToken(String token) {
+    String key = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+    String[] parts = key.split("/");
+    if (parts.length != 2) {
+      throw new IllegalArgumentException("Invalid pageToken");
+    }
+    return new long[] {Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+  }
+}
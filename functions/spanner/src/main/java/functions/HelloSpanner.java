@@ -55,6 +55,26 @@ public class HelloSpanner implements HttpFunction {
   // instance for all subsequent requests.
   private static final LazySpannerInitializer SPANNER_INITIALIZER = new LazySpannerInitializer();
 
+  // Set SPANNER_WARMUP=true to create the Spanner instance and its session pool in the background
+  // as soon as the class is loaded, so the first request does not have to wait for sessions.
+  static {
+    if (Boolean.parseBoolean(System.getenv("SPANNER_WARMUP"))) {
+      Thread warmup =
+          new Thread(
+              () -> {
+                try {
+                  SPANNER_INITIALIZER.get().getDatabaseClient(databaseId);
+                } catch (Throwable t) {
+                  // The first request reports the error.
+                  logger.log(Level.FINE, "Spanner warmup failed", t);
+                }
+              },
+              "spanner-warmup");
+      warmup.setDaemon(true);
+      warmup.start();
+    }
+  }
+
   @VisibleForTesting
   DatabaseClient getClient() throws Throwable {
     return SPANNER_INITIALIZER.get().getDatabaseClient(databaseId);
@@ -62,6 +82,11 @@ public class HelloSpanner implements HttpFunction {
 
   @Override
   public void service(HttpRequest request, HttpResponse response) throws Exception {
+    // ?format=json returns the albums as paged JSON instead
+    if (request.getFirstQueryParameter("format").filter("json"::equals).isPresent()) {
+      AlbumPages.service(request, response, this::getClient);
+      return;
+    }
     var writer = new PrintWriter(response.getWriter());
     try {
       DatabaseClient client = getClient();
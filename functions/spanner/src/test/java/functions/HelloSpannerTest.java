@@ -17,6 +17,7 @@
 package functions;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -32,7 +33,9 @@ import com.google.common.testing.TestLogHandler;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.Optional;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -113,6 +116,33 @@ public class HelloSpannerTest {
     assertThat(responseOut.toString()).isEqualTo("Albums:\n1 1 Album 1\n2 1 Album 2\n");
   }
 
+  @Test
+  public void functionsHelloSpanner_shouldListAlbumsAsJsonPage() throws Exception {
+    ReadContext readContext = mock(ReadContext.class);
+    ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.next()).thenReturn(true, true, false);
+    when(resultSet.getLong("SingerId")).thenReturn(1L, 2L);
+    when(resultSet.getLong("AlbumId")).thenReturn(1L, 1L);
+    when(resultSet.getString("AlbumTitle")).thenReturn("Album 1", "Album 2");
+    when(readContext.executeQuery(any(Statement.class))).thenReturn(resultSet);
+    when(client.singleUse()).thenReturn(readContext);
+    when(request.getFirstQueryParameter("format")).thenReturn(Optional.of("json"));
+    when(request.getFirstQueryParameter("pageSize")).thenReturn(Optional.of("1"));
+
+    new HelloSpanner() {
+      @Override
+      DatabaseClient getClient() {
+        return client;
+      }
+    }.service(request, response);
+    writerOut.flush();
+    // The second row only tells that there is a next page, starting after album 1/1.
+    assertThat(responseOut.toString())
+        .isEqualTo(
+            "{\"albums\":[{\"singerId\":1,\"albumId\":1,\"albumTitle\":\"Album 1\"}],"
+                + "\"nextPageToken\":\"MS8x\"}");
+  }
+
   private void setupFailedMockQuery() {
     ReadContext readContext = mock(ReadContext.class);
     when(readContext.executeQuery(Statement.of("SELECT SingerId, AlbumId, AlbumTitle FROM Albums")))
@@ -150,4 +180,14 @@ public class HelloSpannerTest {
     assertThat(logHandler.getStoredLogRecords().get(0).getMessage())
         .startsWith("Spanner example failed");
   }
+
+  @Test
+  public void functionsHelloSpanner_shouldNotWarmUpByDefault() {
+    new HelloSpanner();
+    assertThat(
+            Thread.getAllStackTraces().keySet().stream()
+                .map(Thread::getName)
+                .collect(Collectors.toList()))
+        .doesNotContain("spanner-warmup");
+  }
 }
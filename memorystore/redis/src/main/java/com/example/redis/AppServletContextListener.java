@@ -42,13 +42,28 @@ public class AppServletContextListener implements ServletContextListener {
 
     JedisPoolConfig poolConfig = new JedisPoolConfig();
     // Default : 8, consider how many concurrent connections into Redis you will need under load
-    poolConfig.setMaxTotal(128);
+    poolConfig.setMaxTotal(Integer.parseInt(config.getProperty("redis.pool.maxTotal", "128")));
+    poolConfig.setMaxIdle(Integer.parseInt(config.getProperty("redis.pool.maxIdle", "8")));
+    poolConfig.setMinIdle(Integer.parseInt(config.getProperty("redis.pool.minIdle", "0")));
+    // Default : -1 (wait forever), fail after 2 seconds instead when the pool is exhausted
+    poolConfig.setMaxWaitMillis(
+        Long.parseLong(config.getProperty("redis.pool.maxWaitMillis", "2000")));
 
     return new JedisPool(poolConfig, host, port);
   }
 
   @Override
   public void contextDestroyed(ServletContextEvent event) {
+    VisitCounter visitCounter =
+        (VisitCounter) event.getServletContext().getAttribute("visitCounter");
+    if (visitCounter != null) {
+      try {
+        visitCounter.close();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      event.getServletContext().setAttribute("visitCounter", null);
+    }
     JedisPool jedisPool = (JedisPool) event.getServletContext().getAttribute("jedisPool");
     if (jedisPool != null) {
       jedisPool.destroy();
@@ -64,6 +79,13 @@ public class AppServletContextListener implements ServletContextListener {
       try {
         jedisPool = createJedisPool();
         event.getServletContext().setAttribute("jedisPool", jedisPool);
+        // When set, visits are counted in memory and written to Redis at this interval.
+        long flushMillis = Long.parseLong(config.getProperty("counter.flushMillis", "0"));
+        if (flushMillis > 0) {
+          event
+              .getServletContext()
+              .setAttribute("visitCounter", new VisitCounter(jedisPool, "visits", flushMillis));
+        }
       } catch (IOException e) {
         // handle exception
       }
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.redis;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Counts visits in memory and adds them to a Redis counter every few milliseconds.
+ *
+ * <p>Instead of one INCR round trip per visit, visits are added to a {@link LongAdder} and written
+ * with a single INCRBY per flush. The count returned is the value Redis returned on the last flush
+ * plus the visits counted since, so it also includes visits counted by other instances up to the
+ * last flush.
+ */
+public class VisitCounter implements AutoCloseable {
+
+  private static final Logger logger = Logger.getLogger(VisitCounter.class.getName());
+
+  // Value of the Redis counter after a flush, and how many of the visits counted here it includes.
+  private static class Flushed {
+    private final long redisCount;
+    private final long visits;
+
+    Flushed(long redisCount, long visits) {
+      this.redisCount = redisCount;
+      this.visits = visits;
+    }
+  }
+
+  private final JedisPool jedisPool;
+  private final String key;
+  // Visits counted here since the counter was created; never reset, so no visit is ever missing
+  // from both this and the last flush.
+  private final LongAdder visits = new LongAdder();
+  private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+  private volatile Flushed flushed = new Flushed(0, 0);
+
+  public VisitCounter(JedisPool jedisPool, String key, long flushIntervalMillis) {
+    this.jedisPool = jedisPool;
+    this.key = key;
+    flusher.scheduleWithFixedDelay(
+        this::flushQuietly, 0, flushIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Counts a visit and returns the number of visits so far. */
+  public long increment() {
+    visits.increment();
+    Flushed last = flushed;
+    return last.redisCount + visits.sum() - last.visits;
+  }
+
+  /** Writes the visits counted since the last flush, and reads the current total. */
+  public synchronized void flush() {
+    long total = visits.sum();
+    Flushed last = flushed;
+    try (Jedis jedis = jedisPool.getResource()) {
+      // INCRBY 0 when there were no visits still picks up visits counted by other instances.
+      // If this fails, the same visits are written again on the next flush; if Redis did apply
+      // the INCRBY before failing, they are counted twice rather than lost.
+      long redisCount = jedis.incrBy(key, total - last.visits);
+      flushed = new Flushed(redisCount, total);
+    }
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    flusher.shutdown();
+    flusher.awaitTermination(10, TimeUnit.SECONDS);
+    flush();
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Unable to write visit count to Redis; will retry.", e);
+    }
+  }
+}
@@ -39,8 +39,14 @@ public class VisitCounterServlet extends HttpServlet {
       }
       Long visits;
 
-      try (Jedis jedis = jedisPool.getResource()) {
-        visits = jedis.incr("visits");
+      VisitCounter visitCounter =
+          (VisitCounter) req.getServletContext().getAttribute("visitCounter");
+      if (visitCounter != null) {
+        visits = visitCounter.increment();
+      } else {
+        try (Jedis jedis = jedisPool.getResource()) {
+          visits = jedis.incr("visits");
+        }
       }
 
       resp.setStatus(HttpServletResponse.SC_OK);
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudrun;
+
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Verified ID tokens, kept until they expire so each token is only verified once. */
+class TokenCache {
+
+  /** Verifies an ID token, for example with {@code FirebaseAuth#verifyIdToken}. */
+  interface Verifier {
+    FirebaseToken verify(String idToken) throws FirebaseAuthException;
+  }
+
+  private final Verifier verifier;
+  private final int maxTokens;
+  private final Map<String, FirebaseToken> verifiedTokens = new ConcurrentHashMap<>();
+
+  TokenCache(Verifier verifier, int maxTokens) {
+    this.verifier = verifier;
+    this.maxTokens = maxTokens;
+  }
+
+  /** Verify an Id Token, reusing the result of an earlier verification until the token expires. */
+  FirebaseToken verify(String idToken) throws FirebaseAuthException {
+    long now = System.currentTimeMillis();
+    FirebaseToken cached = verifiedTokens.get(idToken);
+    if (cached != null && expiresAtMillis(cached) > now) {
+      return cached;
+    }
+    FirebaseToken decodedToken = verifier.verify(idToken);
+    if (verifiedTokens.size() >= maxTokens) {
+      verifiedTokens.values().removeIf(token -> expiresAtMillis(token) <= now);
+    }
+    if (verifiedTokens.size() < maxTokens) {
+      verifiedTokens.put(idToken, decodedToken);
+    }
+    return decodedToken;
+  }
+
+  /** The number of tokens currently cached. */
+  int size() {
+    return verifiedTokens.size();
+  }
+
+  private static long expiresAtMillis(FirebaseToken token) {
+    Object exp = token.getClaims().get("exp");
+    // "exp" is in seconds since the epoch; treat a token without one as already expired.
+    return exp instanceof Number ? ((Number) exp).longValue() * 1000 : 0;
+  }
+}
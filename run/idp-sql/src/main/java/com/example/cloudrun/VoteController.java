@@ -20,9 +20,15 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthException;
 import com.google.firebase.auth.FirebaseToken;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -43,21 +49,36 @@ public final class VoteController {
 
   private static final Logger logger = LoggerFactory.getLogger(VoteController.class);
   private final String table = System.getenv().getOrDefault("TABLE", "pet_votes");
+  // How long the vote counts and latest votes are served from memory.
+  private final long snapshotTtlNanos =
+      TimeUnit.MILLISECONDS.toNanos(
+          Long.parseLong(System.getenv().getOrDefault("SNAPSHOT_TTL_MS", "1000")));
+  private static final long VOTE_TIMEOUT_SECONDS = 10;
+  private static final int MAX_CACHED_TOKENS = 10000;
+  private final VoteWriter voteWriter;
+  private volatile VoteSnapshot snapshot;
+  // Incremented after each vote is written; snapshots read before then are no longer served.
+  private final AtomicLong voteGeneration = new AtomicLong();
+  private final TokenCache verifiedTokens =
+      new TokenCache(
+          idToken -> FirebaseAuth.getInstance().verifyIdToken(idToken), MAX_CACHED_TOKENS);
   // [START cloudrun_user_auth_sql_connect]
   private final JdbcTemplate jdbcTemplate;
 
-  public VoteController(JdbcTemplate jdbcTemplate) {
+  public VoteController(JdbcTemplate jdbcTemplate, VoteWriter voteWriter) {
     this.jdbcTemplate = jdbcTemplate;
+    this.voteWriter = voteWriter;
   }
   // [END cloudrun_user_auth_sql_connect]
 
   @GetMapping("/")
   public String index(Model model) {
     try {
-      // Query the total count of "CATS" from the database.
-      int catVotes = getVoteCount("CATS");
-      // Query the total count of "DOGS" from the database.
-      int dogVotes = getVoteCount("DOGS");
+      // Query the total counts of "CATS" and "DOGS" and the last 5 votes from the database,
+      // or reuse the results of a recent query.
+      VoteSnapshot snapshot = getSnapshot();
+      int catVotes = snapshot.getCatVotes();
+      int dogVotes = snapshot.getDogVotes();
 
       // Calculate and set leader values.
       String leadTeam;
@@ -78,8 +99,7 @@ public final class VoteController {
         leadTeam = null;
       }
 
-      // Query the last 5 votes from the database.
-      List<Vote> votes = getVotes();
+      List<Vote> votes = snapshot.getVotes();
 
       // Add values to template
       model.addAttribute("leaderMessage", leaderMessage);
@@ -120,14 +140,22 @@ public final class VoteController {
     Vote vote = new Vote(uid, team, timestamp);
     // Save the data to the database.
     try {
-      insertVote(vote);
+      // Votes from concurrent requests are inserted together; wait until this one is written.
+      voteWriter.submit(vote).get(VOTE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      // Show the new vote on the next page load, even if a refresh that started before it was
+      // written is still running.
+      voteGeneration.incrementAndGet();
       MDC.put("uid", uid);
       MDC.put("team", team);
       logger.info("vote_inserted");
-    } catch (DataAccessException e) {
+    } catch (ExecutionException | TimeoutException e) {
       logger.error("Error while attempting to submit vote: " + e.toString());
       throw new ResponseStatusException(
           HttpStatus.INTERNAL_SERVER_ERROR, "Unable to cast vote; see logs for more details.", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ResponseStatusException(
+          HttpStatus.INTERNAL_SERVER_ERROR, "Unable to cast vote; see logs for more details.", e);
     }
     return "Successfully voted for " + team + " at " + timestamp.toLocalDateTime();
   }
@@ -144,7 +172,7 @@ public final class VoteController {
       // If the provided ID token has the correct format, is not expired, and is
       // properly signed, the method returns the decoded ID token
       try {
-        FirebaseToken decodedToken = FirebaseAuth.getInstance().verifyIdToken(idToken);
+        FirebaseToken decodedToken = verifyIdToken(idToken);
         String uid = decodedToken.getUid();
         return uid;
       } catch (FirebaseAuthException e) {
@@ -158,33 +186,65 @@ public final class VoteController {
   }
   // [END cloudrun_user_auth_jwt]
 
-  /** Insert a vote record into the database. */
-  public void insertVote(Vote vote) throws DataAccessException {
-    this.jdbcTemplate.update(
-        "INSERT INTO " + table + "(candidate, time_cast, uid) VALUES(?,?,?)",
-        vote.getCandidate(),
-        vote.getTimeCast(),
-        vote.getUid());
+  /** Verify an Id Token, or reuse the result of an earlier verification. */
+  private FirebaseToken verifyIdToken(String idToken) throws FirebaseAuthException {
+    return verifiedTokens.verify(idToken);
   }
 
-  /** Retrieve the latest 5 vote records from the database. */
-  public List<Vote> getVotes() throws DataAccessException {
-    return this.jdbcTemplate.query(
-        "SELECT candidate, time_cast, uid FROM " + table + " ORDER BY time_cast DESC LIMIT 5",
-        (rs, rowNum) -> {
-          String candidate = rs.getString("candidate");
-          String uid = rs.getString("uid");
-          Timestamp timeCast = rs.getTimestamp("time_cast");
-          return new Vote(uid, candidate, timeCast);
-        });
+  /**
+   * Retrieve the total count of records for each candidate and the latest 5 vote records, with a
+   * single query. The results are reused for the next SNAPSHOT_TTL_MS milliseconds.
+   */
+  public VoteSnapshot getSnapshot() throws DataAccessException {
+    VoteSnapshot current = this.snapshot;
+    if (isFresh(current)) {
+      return current;
+    }
+    synchronized (this) {
+      // Another request may have refreshed the snapshot while this one waited.
+      current = this.snapshot;
+      if (isFresh(current)) {
+        return current;
+      }
+      // Read before querying, so a vote written during the query makes the result stale.
+      long generation = voteGeneration.get();
+      current =
+          this.jdbcTemplate.query(
+              "SELECT candidate, time_cast, uid,"
+                  + " (SELECT COUNT(vote_id) FROM " + table + " WHERE candidate = ?) AS cat_votes,"
+                  + " (SELECT COUNT(vote_id) FROM " + table + " WHERE candidate = ?) AS dog_votes"
+                  + " FROM " + table + " ORDER BY time_cast DESC LIMIT 5",
+              rs -> {
+                // The counts are repeated on every row; with no rows, there are no votes.
+                int catVotes = 0;
+                int dogVotes = 0;
+                List<Vote> votes = new ArrayList<>();
+                while (rs.next()) {
+                  catVotes = rs.getInt("cat_votes");
+                  dogVotes = rs.getInt("dog_votes");
+                  votes.add(
+                      new Vote(
+                          rs.getString("uid"),
+                          rs.getString("candidate"),
+                          rs.getTimestamp("time_cast")));
+                }
+                return new VoteSnapshot(
+                    catVotes,
+                    dogVotes,
+                    Collections.unmodifiableList(votes),
+                    System.nanoTime() + snapshotTtlNanos,
+                    generation);
+              },
+              "CATS",
+              "DOGS");
+      this.snapshot = current;
+      return current;
+    }
   }
 
-  /** Retrieve the total count of records for a given candidate from the database. */
-  public int getVoteCount(String candidate) throws DataAccessException {
-    return this.jdbcTemplate.queryForObject(
-        "SELECT COUNT(vote_id) FROM " + table + " WHERE candidate = ?",
-        Integer.class,
-        new Object[] {candidate});
+  private boolean isFresh(VoteSnapshot snapshot) {
+    return snapshot != null
+        && snapshot.getGeneration() == voteGeneration.get()
+        && System.nanoTime() - snapshot.getExpiresAtNanos() < 0;
   }
 }
-
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudrun;
+
+import java.util.List;
+import lombok.Value;
+
+/** Lombok notation to generate an immutable class: vote counts and the latest votes. */
+@Value
+public class VoteSnapshot {
+  int catVotes;
+  int dogVotes;
+  List<Vote> votes;
+  // System.nanoTime() after which the snapshot is read again.
+  long expiresAtNanos;
+  // Number of votes written by this instance before the snapshot was read.
+  long generation;
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudrun;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Inserts votes in batches: votes cast by concurrent requests are queued and written together with
+ * one {@link JdbcTemplate#batchUpdate(String, List)} call per flush, instead of one round trip per
+ * vote.
+ *
+ * <p>Each queued vote gets a future that completes once the batch containing it has been written.
+ */
+@Component
+public class VoteWriter {
+
+  private static final Logger logger = LoggerFactory.getLogger(VoteWriter.class);
+  private static final int MAX_BATCH_SIZE = 500;
+  private static final long FLUSH_INTERVAL_MILLIS = 5;
+
+  private static class PendingVote {
+    private final Vote vote;
+    private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+    PendingVote(Vote vote) {
+      this.vote = vote;
+    }
+  }
+
+  private final String table = System.getenv().getOrDefault("TABLE", "pet_votes");
+  private final JdbcTemplate jdbcTemplate;
+  private final ConcurrentLinkedQueue<PendingVote> queue = new ConcurrentLinkedQueue<>();
+  private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+
+  public VoteWriter(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+    flusher.scheduleWithFixedDelay(
+        this::flushAll, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /** Queues a vote. The returned future completes when the vote has been written. */
+  public CompletableFuture<Void> submit(Vote vote) {
+    PendingVote pending = new PendingVote(vote);
+    queue.add(pending);
+    return pending.written;
+  }
+
+  /** Stops flushing after writing the votes still queued. */
+  @PreDestroy
+  public void close() {
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flushAll();
+  }
+
+  private void flushAll() {
+    // Keep writing batches while votes arrive faster than they can be written.
+    while (!queue.isEmpty()) {
+      List<PendingVote> batch = new ArrayList<>(MAX_BATCH_SIZE);
+      for (PendingVote pending = queue.poll(); pending != null; pending = queue.poll()) {
+        batch.add(pending);
+        if (batch.size() >= MAX_BATCH_SIZE) {
+          break;
+        }
+      }
+      List<Object[]> rows = new ArrayList<>(batch.size());
+      for (PendingVote pending : batch) {
+        Vote vote = pending.vote;
+        rows.add(new Object[] {vote.getCandidate(), vote.getTimeCast(), vote.getUid()});
+      }
+      try {
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO " + table + "(candidate, time_cast, uid) VALUES(?,?,?)", rows);
+        for (PendingVote pending : batch) {
+          pending.written.complete(null);
+        }
+      } catch (RuntimeException e) {
+        // Catch everything, since an exception would stop the scheduled flushes for good.
+        logger.error("Error while attempting to write a batch of votes: " + e.toString());
+        for (PendingVote pending : batch) {
+          pending.written.completeExceptionally(e);
+        }
+      }
+    }
+  }
+}
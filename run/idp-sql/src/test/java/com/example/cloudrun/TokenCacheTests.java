@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudrun;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.FirebaseToken;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class TokenCacheTests {
+
+  // Answers with the tokens set by the test, counting the verifications.
+  private final Map<String, FirebaseToken> tokens = new HashMap<>();
+  private final AtomicInteger verifications = new AtomicInteger();
+  private final TokenCache.Verifier verifier =
+      idToken -> {
+        verifications.incrementAndGet();
+        FirebaseToken token = tokens.get(idToken);
+        if (token == null) {
+          throw mock(FirebaseAuthException.class);
+        }
+        return token;
+      };
+
+  @Test
+  public void verifiedTokenIsReused() throws Exception {
+    FirebaseToken token = tokenExpiringIn(TimeUnit.HOURS.toSeconds(1));
+    tokens.put("a", token);
+    TokenCache cache = new TokenCache(verifier, 10);
+
+    assertThat(cache.verify("a")).isSameAs(token);
+    assertThat(cache.verify("a")).isSameAs(token);
+    assertThat(verifications.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void expiredTokenIsVerifiedAgain() throws Exception {
+    tokens.put("a", tokenExpiringIn(-1));
+    TokenCache cache = new TokenCache(verifier, 10);
+
+    cache.verify("a");
+    cache.verify("a");
+
+    assertThat(verifications.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void tokenWithoutExpiryIsVerifiedAgain() throws Exception {
+    FirebaseToken token = mock(FirebaseToken.class);
+    when(token.getClaims()).thenReturn(Map.of());
+    tokens.put("a", token);
+    TokenCache cache = new TokenCache(verifier, 10);
+
+    cache.verify("a");
+    cache.verify("a");
+
+    assertThat(verifications.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void invalidTokenIsNotCached() throws Exception {
+    TokenCache cache = new TokenCache(verifier, 10);
+
+    assertThrows(FirebaseAuthException.class, () -> cache.verify("a"));
+    assertThat(cache.size()).isEqualTo(0);
+
+    tokens.put("a", tokenExpiringIn(TimeUnit.HOURS.toSeconds(1)));
+    cache.verify("a");
+    assertThat(verifications.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void fullCacheDropsExpiredTokens() throws Exception {
+    tokens.put("expired1", tokenExpiringIn(-1));
+    tokens.put("expired2", tokenExpiringIn(-1));
+    tokens.put("valid", tokenExpiringIn(TimeUnit.HOURS.toSeconds(1)));
+    TokenCache cache = new TokenCache(verifier, 2);
+    cache.verify("expired1");
+    cache.verify("expired2");
+
+    cache.verify("valid");
+    cache.verify("valid");
+
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(verifications.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void fullCacheStillVerifiesNewTokens() throws Exception {
+    tokens.put("a", tokenExpiringIn(TimeUnit.HOURS.toSeconds(1)));
+    tokens.put("b", tokenExpiringIn(TimeUnit.HOURS.toSeconds(1)));
+    TokenCache cache = new TokenCache(verifier, 1);
+    cache.verify("a");
+
+    cache.verify("b");
+    cache.verify("b");
+
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(verifications.get()).isEqualTo(3);
+  }
+
+  private static FirebaseToken tokenExpiringIn(long seconds) {
+    FirebaseToken token = mock(FirebaseToken.class);
+    long exp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + seconds;
+    when(token.getClaims()).thenReturn(Map.of("exp", exp));
+    return token;
+  }
+}
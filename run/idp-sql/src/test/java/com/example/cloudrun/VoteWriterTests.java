@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.cloudrun;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+class VoteWriterTests {
+
+  private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+  private VoteWriter voteWriter;
+
+  @BeforeEach
+  public void setUp() {
+    voteWriter = new VoteWriter(jdbcTemplate);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    voteWriter.close();
+  }
+
+  @Test
+  public void submitWritesVotes() throws Exception {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+
+    CompletableFuture<Void> cats = voteWriter.submit(new Vote("uid1", "CATS", now));
+    CompletableFuture<Void> dogs = voteWriter.submit(new Vote("uid2", "DOGS", now));
+    cats.get(10, TimeUnit.SECONDS);
+    dogs.get(10, TimeUnit.SECONDS);
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<Object[]>> batches = ArgumentCaptor.forClass(List.class);
+    verify(jdbcTemplate, atLeastOnce()).batchUpdate(anyString(), batches.capture());
+    List<Object[]> rows = new ArrayList<>();
+    batches.getAllValues().forEach(rows::addAll);
+    assertThat(rows)
+        .containsExactly(new Object[] {"CATS", now, "uid1"}, new Object[] {"DOGS", now, "uid2"});
+  }
+
+  @Test
+  public void submitFailsWhenBatchFails() {
+    DataAccessResourceFailureException failure =
+        new DataAccessResourceFailureException("Connection reset");
+    when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(failure);
+
+    CompletableFuture<Void> vote =
+        voteWriter.submit(new Vote("uid1", "CATS", new Timestamp(System.currentTimeMillis())));
+
+    ExecutionException thrown =
+        assertThrows(ExecutionException.class, () -> vote.get(10, TimeUnit.SECONDS));
+    assertThat(thrown.getCause()).isSameAs(failure);
+  }
+
+  @Test
+  public void writerKeepsFlushingAfterFailure() throws Exception {
+    when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+        .thenThrow(new IllegalStateException("Pool is closed"))
+        .thenReturn(new int[] {1});
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+
+    CompletableFuture<Void> failed = voteWriter.submit(new Vote("uid1", "CATS", now));
+    assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+    voteWriter.submit(new Vote("uid2", "DOGS", now)).get(10, TimeUnit.SECONDS);
+  }
+}
@@ -16,13 +16,12 @@
 package com.example.gettingstarted.util;
 
 import com.example.gettingstarted.actions.HelloWorldServlet;
+import com.google.cloud.firestore.BulkWriter;
 import com.google.cloud.firestore.CollectionReference;
-import com.google.cloud.firestore.DocumentSnapshot;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.FirestoreOptions;
 import com.google.cloud.firestore.QueryDocumentSnapshot;
 import com.google.cloud.firestore.QuerySnapshot;
-import com.google.common.collect.Maps;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.SecureRandom;
@@ -54,6 +53,7 @@ public class FirestoreSessionFilter implements Filter {
   private static final Logger logger = Logger.getLogger(HelloWorldServlet.class.getName());
   private static Firestore firestore;
   private static CollectionReference sessions;
+  private static SessionStore sessionStore;
 
   // [START sessions_handling_init]
   @Override
@@ -61,24 +61,49 @@ public class FirestoreSessionFilter implements Filter {
     // Initialize local copy of datastore session variables.
     firestore = FirestoreOptions.getDefaultInstance().getService();
     sessions = firestore.collection("sessions");
+    // Keep recently used sessions in memory, and write changed session variables in batches.
+    sessionStore =
+        new SessionStore(
+            firestore,
+            sessions,
+            () -> {
+              synchronized (dtf) {
+                return dtf.format(new Date());
+              }
+            },
+            10000,
+            60,
+            500);
 
     try {
       // Delete all sessions unmodified for over two days.
       Calendar cal = Calendar.getInstance();
       cal.setTime(new Date());
       cal.add(Calendar.HOUR, -48);
-      Date twoDaysAgo = Calendar.getInstance().getTime();
+      Date twoDaysAgo = cal.getTime();
       QuerySnapshot sessionDocs =
           sessions.whereLessThan("lastModified", dtf.format(twoDaysAgo)).get().get();
+      // BulkWriter batches the deletes and retries failed ones.
+      BulkWriter bulkWriter = firestore.bulkWriter();
       for (QueryDocumentSnapshot snapshot : sessionDocs.getDocuments()) {
-        snapshot.getReference().delete();
+        bulkWriter.delete(snapshot.getReference());
       }
+      bulkWriter.close();
     } catch (InterruptedException | ExecutionException e) {
       throw new ServletException("Exception initializing FirestoreSessionFilter.", e);
     }
   }
   // [END sessions_handling_init]
 
+  @Override
+  public void destroy() {
+    try {
+      sessionStore.close();
+    } catch (ExecutionException | InterruptedException e) {
+      logger.warning("Unable to write session changes on shutdown: " + e);
+    }
+  }
+
   // [START sessions_handling_filter]
   @Override
   public void doFilter(ServletRequest servletReq, ServletResponse servletResp, FilterChain chain)
@@ -100,6 +125,7 @@ public class FirestoreSessionFilter implements Filter {
       Cookie session = new Cookie("bookshelfSessionId", sessionNum);
       session.setPath("/");
       resp.addCookie(session);
+      sessionId = sessionNum;
     }
 
     // session variables for request
@@ -127,7 +153,12 @@ public class FirestoreSessionFilter implements Filter {
     }
 
     logger.info("Saving data to " + sessionId + " with views: " + session.getAttribute("views"));
-    firestore.runTransaction((ob) -> sessions.document(sessionId).set(sessionMap));
+    // Only variables that changed are written, in the background.
+    try {
+      sessionStore.save(sessionId, sessionMap);
+    } catch (ExecutionException | InterruptedException e) {
+      throw new ServletException("Exception saving session variables.", e);
+    }
   }
   // [END sessions_handling_filter]
 
@@ -159,17 +190,8 @@ public class FirestoreSessionFilter implements Filter {
       return datastoreMap;
     }
 
-    return firestore
-        .runTransaction(
-            (ob) -> {
-              DocumentSnapshot session = sessions.document(sessionId).get().get();
-              Map<String, Object> data = session.getData();
-              if (data == null) {
-                data = Maps.newHashMap();
-              }
-              return data;
-            })
-        .get();
+    // Served from memory when this session was used recently.
+    return sessionStore.load(sessionId);
   }
   // [END sessions_load_session_variables]
 }
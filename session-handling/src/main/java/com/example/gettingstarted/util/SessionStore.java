@@ -0,0 +1,228 @@
+/* Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.gettingstarted.util;
+
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores session variables in Firestore, with an in-process cache of recently used sessions.
+ *
+ * <p>Sessions are read from the cache when possible. When a session is saved, only the variables
+ * that changed since it was loaded are written, and the write is made asynchronously: changes are
+ * queued and written together in a {@link WriteBatch} every {@code flushIntervalMillis}. A session
+ * that has not changed is not written at all.
+ *
+ * <p>Cached sessions expire after {@code cacheTtlSeconds}, which bounds how stale a session can be
+ * when requests for it are served by more than one instance.
+ */
+public class SessionStore {
+
+  private static final Logger logger = Logger.getLogger(SessionStore.class.getName());
+
+  /** The maximum number of writes Firestore accepts in one batch. */
+  static final int MAX_BATCH_SIZE = 500;
+
+  private final Firestore firestore;
+  private final CollectionReference sessions;
+  private final Supplier<String> timestamp;
+  // Last known contents of each session, as stored in Firestore once pending writes are applied.
+  private final Cache<String, Map<String, Object>> cache;
+  // Changed variables of each session that have not been written yet.
+  private final Map<String, Map<String, Object>> pending = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+
+  /**
+   * Creates a session store and starts writing changes in the background.
+   *
+   * @param firestore the Firestore client
+   * @param sessions the collection holding one document per session
+   * @param timestamp supplies the value stored in each changed session's lastModified field
+   * @param maxCachedSessions the number of sessions kept in memory
+   * @param cacheTtlSeconds how long a session is served from memory before it is read again
+   * @param flushIntervalMillis how long changes are queued before they are written
+   */
+  public SessionStore(
+      Firestore firestore,
+      CollectionReference sessions,
+      Supplier<String> timestamp,
+      long maxCachedSessions,
+      long cacheTtlSeconds,
+      long flushIntervalMillis) {
+    this.firestore = firestore;
+    this.sessions = sessions;
+    this.timestamp = timestamp;
+    this.cache =
+        CacheBuilder.newBuilder()
+            .maximumSize(maxCachedSessions)
+            .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+            .build();
+    flusher.scheduleWithFixedDelay(
+        this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Returns a copy of the session's variables, or an empty map for a new session. */
+  public Map<String, Object> load(String sessionId)
+      throws ExecutionException, InterruptedException {
+    Map<String, Object> data = cache.getIfPresent(sessionId);
+    if (data == null) {
+      DocumentSnapshot session = sessions.document(sessionId).get().get();
+      Map<String, Object> stored =
+          session.getData() == null ? new HashMap<>() : new HashMap<>(session.getData());
+      // Apply changes that have not been written yet, so they are not lost from the cache.
+      pending.computeIfPresent(
+          sessionId,
+          (id, changes) -> {
+            apply(stored, changes);
+            return changes;
+          });
+      cache.put(sessionId, stored);
+      data = stored;
+    }
+    synchronized (data) {
+      return new HashMap<>(data);
+    }
+  }
+
+  /**
+   * Queues a write of the variables that differ from the last loaded or saved version of the
+   * session. Nothing is written if none of them changed.
+   */
+  public void save(String sessionId, Map<String, Object> variables)
+      throws ExecutionException, InterruptedException {
+    Map<String, Object> known = cache.getIfPresent(sessionId);
+    if (known == null) {
+      load(sessionId);
+      known = cache.getIfPresent(sessionId);
+      if (known == null) {
+        // Evicted again straight away; compare against an empty session.
+        known = new HashMap<>();
+      }
+    }
+
+    Map<String, Object> changes = new HashMap<>();
+    synchronized (known) {
+      for (Map.Entry<String, Object> entry : variables.entrySet()) {
+        if (!Objects.equals(known.get(entry.getKey()), entry.getValue())) {
+          changes.put(entry.getKey(), entry.getValue());
+        }
+      }
+      for (String name : known.keySet()) {
+        if (!variables.containsKey(name) && !"lastModified".equals(name)) {
+          changes.put(name, FieldValue.delete());
+        }
+      }
+      if (changes.isEmpty()) {
+        return;
+      }
+      changes.put("lastModified", timestamp.get());
+      apply(known, changes);
+    }
+
+    pending.compute(
+        sessionId,
+        (id, queued) -> {
+          if (queued == null) {
+            return changes;
+          }
+          queued.putAll(changes);
+          return queued;
+        });
+  }
+
+  /** Writes all queued changes and waits for the writes to complete. */
+  public void flush() throws ExecutionException, InterruptedException {
+    List<String> sessionIds = new ArrayList<>(pending.keySet());
+    for (int i = 0; i < sessionIds.size(); i += MAX_BATCH_SIZE) {
+      WriteBatch batch = firestore.batch();
+      Map<String, Map<String, Object>> written = new HashMap<>();
+      int end = Math.min(i + MAX_BATCH_SIZE, sessionIds.size());
+      for (String sessionId : sessionIds.subList(i, end)) {
+        // Once removed, the map is no longer updated by save().
+        Map<String, Object> changes = pending.remove(sessionId);
+        if (changes != null) {
+          batch.set(sessions.document(sessionId), changes, SetOptions.merge());
+          written.put(sessionId, changes);
+        }
+      }
+      if (written.isEmpty()) {
+        continue;
+      }
+      try {
+        batch.commit().get();
+      } catch (ExecutionException e) {
+        // Queue the changes again, behind any newer changes to the same sessions.
+        written.forEach(
+            (sessionId, changes) ->
+                pending.merge(
+                    sessionId,
+                    changes,
+                    (newer, older) -> {
+                      Map<String, Object> merged = new HashMap<>(older);
+                      merged.putAll(newer);
+                      return merged;
+                    }));
+        throw e;
+      }
+    }
+  }
+
+  /** Stops the background writer and writes any queued changes. */
+  public void close() throws ExecutionException, InterruptedException {
+    flusher.shutdown();
+    flusher.awaitTermination(10, TimeUnit.SECONDS);
+    flush();
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (ExecutionException e) {
+      logger.log(Level.WARNING, "Unable to write session changes; they will be retried.", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void apply(Map<String, Object> data, Map<String, Object> changes) {
+    for (Map.Entry<String, Object> change : changes.entrySet()) {
+      if (FieldValue.delete().equals(change.getValue())) {
+        data.remove(change.getKey());
+      } else {
+        data.put(change.getKey(), change.getValue());
+      }
+    }
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.gettingstarted.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SessionStoreTest {
+  // Long enough that the background writer never runs during a test.
+  private static final long FLUSH_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  private final Firestore firestore = mock(Firestore.class);
+  private final CollectionReference sessions = mock(CollectionReference.class);
+  private final DocumentReference doc = mock(DocumentReference.class);
+  private final DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+  private final AtomicInteger timestamps = new AtomicInteger();
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private SessionStore store;
+
+  @Before
+  public void setUp() {
+    when(sessions.document("session")).thenReturn(doc);
+    when(doc.get()).thenReturn(ApiFutures.immediateFuture(snapshot));
+    when(snapshot.getData()).thenReturn(Map.of("count", 1L, "name", "a", "lastModified", "T0"));
+    WriteBatch batch = batchCommitting(ApiFutures.immediateFuture(List.of()));
+    when(firestore.batch()).thenReturn(batch);
+    store = newStore(10);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    store.close();
+  }
+
+  @Test
+  public void unchangedSessionIsNotWritten() throws Exception {
+    Map<String, Object> variables = store.load("session");
+    variables.remove("lastModified");
+
+    store.save("session", variables);
+    store.flush();
+
+    verify(firestore, never()).batch();
+  }
+
+  @Test
+  public void writesOnlyChangedAndRemovedVariables() throws Exception {
+    WriteBatch batch = batchCommitting(ApiFutures.immediateFuture(List.of()));
+    when(firestore.batch()).thenReturn(batch);
+
+    store.save("session", Map.of("count", 2L, "greeting", "Hello"));
+    store.flush();
+
+    Map<String, Object> changes = new HashMap<>();
+    changes.put("count", 2L);
+    changes.put("greeting", "Hello");
+    changes.put("name", FieldValue.delete());
+    changes.put("lastModified", "T1");
+    verify(batch).set(doc, changes, SetOptions.merge());
+    verify(batch).commit();
+  }
+
+  @Test
+  public void savedSessionIsLoadedFromMemory() throws Exception {
+    store.load("session");
+    store.save("session", Map.of("count", 2L));
+
+    assertEquals(Map.of("count", 2L, "lastModified", "T1"), store.load("session"));
+    verify(doc, times(1)).get();
+  }
+
+  @Test
+  public void savesBeforeAFlushAreWrittenTogether() throws Exception {
+    WriteBatch batch = batchCommitting(ApiFutures.immediateFuture(List.of()));
+    when(firestore.batch()).thenReturn(batch);
+
+    store.save("session", Map.of("count", 2L, "name", "a"));
+    store.save("session", Map.of("count", 3L));
+    store.flush();
+
+    Map<String, Object> changes = new HashMap<>();
+    changes.put("count", 3L);
+    changes.put("name", FieldValue.delete());
+    changes.put("lastModified", "T2");
+    verify(batch).set(doc, changes, SetOptions.merge());
+    verify(batch).commit();
+  }
+
+  @Test
+  public void failedWriteIsRequeuedBehindNewerChanges() throws Exception {
+    SettableApiFuture<List<WriteResult>> failedCommit = SettableApiFuture.create();
+    WriteBatch failed = batchCommitting(failedCommit);
+    WriteBatch retried = batchCommitting(ApiFutures.immediateFuture(List.of()));
+    when(firestore.batch()).thenReturn(failed, retried);
+
+    // Remove a variable, then set it again while the removal is being written.
+    store.save("session", Map.of("count", 2L));
+    Future<?> flush =
+        executor.submit(
+            () -> {
+              store.flush();
+              return null;
+            });
+    verify(failed, timeout(5000)).commit();
+    store.save("session", Map.of("count", 2L, "name", "b"));
+    failedCommit.setException(new IllegalStateException("unavailable"));
+    try {
+      flush.get(5, TimeUnit.SECONDS);
+      fail("Expected ExecutionException");
+    } catch (ExecutionException expected) {
+      // The flush fails, and its changes are queued again.
+    }
+
+    store.flush();
+
+    Map<String, Object> changes = new HashMap<>();
+    changes.put("count", 2L);
+    changes.put("name", "b");
+    changes.put("lastModified", "T2");
+    verify(retried).set(doc, changes, SetOptions.merge());
+    verify(retried).commit();
+  }
+
+  @Test
+  public void queuedChangesAreKeptWhenTheSessionIsReadAgain() throws Exception {
+    // A store that keeps nothing in memory reads every session from Firestore.
+    SessionStore uncached = newStore(0);
+    try {
+      uncached.save("session", Map.of("count", 2L));
+
+      Map<String, Object> expected = new HashMap<>();
+      expected.put("count", 2L);
+      expected.put("name", "a");
+      expected.put("lastModified", "T1");
+      assertEquals(expected, uncached.load("session"));
+    } finally {
+      uncached.close();
+    }
+  }
+
+  private SessionStore newStore(long maxCachedSessions) {
+    return new SessionStore(
+        firestore,
+        sessions,
+        () -> "T" + timestamps.incrementAndGet(),
+        maxCachedSessions,
+        60,
+        FLUSH_INTERVAL_MILLIS);
+  }
+
+  private static WriteBatch batchCommitting(ApiFuture<List<WriteResult>> result) {
+    WriteBatch batch = mock(WriteBatch.class);
+    when(batch.commit()).thenReturn(result);
+    return batch;
+  }
+}